@@ -16,12 +16,16 @@
 
 package sk.antons.jaul.binary;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
-import java.io.StringReader;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 import sk.antons.jaul.util.AsRuntimeEx;
 
 /**
@@ -100,28 +104,20 @@ public class Base64 {
      */
     @Deprecated
     public static void decode(Reader reader, OutputStream os) {
-        standard.decode(reader, os);
+        standard().decode(reader, os);
     }
 
-    private static Coder standard = null;
     /**
      * Standard base64 encoding with no wrapping and padding with '=';
      * @return
      */
-    public static Coder standard() {
-        if(standard == null) standard = Base64.standardBased().padding('=').build();
-        return standard;
-    }
+    public static Coder standard() { return STANDARD; }
 
-    private static Coder url = null;
     /**
      * Url based base64 encoding with no wrapping and no padding;
      * @return
      */
-    public static Coder url() {
-        if(url == null) url = Base64.urlBased().nopadding().build();
-        return url;
-    }
+    public static Coder url() { return URL; }
 
     public static class Coder {
 
@@ -131,6 +127,17 @@ public class Base64 {
         private final char padding;
         private final int wrap;
 
+        private static final byte INVALID = -1;
+        private static final byte IGNORABLE = -2;
+        private static final byte END = -3;
+        private static final int BUFFER_SIZE = 8 * 1024;
+
+        /**
+         * Value of each char below 256 or INVALID, IGNORABLE and END for
+         * padding.
+         */
+        private final byte[] table = new byte[256];
+
         private Coder(char baseChars[], char padding, int wrap) {
             if(baseChars == null) throw new IllegalArgumentException("no base chars defined");
             if(baseChars.length != 64) throw new IllegalArgumentException("base chars length is not 64 but "+ baseChars.length);
@@ -139,15 +146,149 @@ public class Base64 {
             this.wrap = wrap;
             this.pluss = baseChars[62];
             this.slash = baseChars[63];
+            // order of assignments keeps priority of original char checks
+            Arrays.fill(table, INVALID);
+            for(int i = 0; i < 62; i++) table[baseCharsStandard[i]] = (byte)i;
+            if(pluss < 256) table[pluss] = 62;
+            if(slash < 256) table[slash] = 63;
+            if(padding < 256) table[padding] = END;
+            table['\n'] = IGNORABLE;
+            table['\r'] = IGNORABLE;
+            table['\t'] = IGNORABLE;
+            table[' '] = IGNORABLE;
         }
 
-        private int char2int(char c) {
+        private int value(int c) {
+            if(c < 256) return table[c];
+            if(c == padding) return END;
             if(c == pluss) return 62;
             if(c == slash) return 63;
-            if((c >= 'A') && (c <= 'Z')) return c - 'A' + 0;
-            if((c >= 'a') && (c <= 'z')) return c - 'a' + 26;
-            if((c >= '0') && (c <= '9')) return c - '0' + 52;
-            throw new IllegalArgumentException("The char '"+c+"' is not valid base64 char.");
+            return INVALID;
+        }
+
+        /**
+         * Decoding state which can be fed by blocks of input.
+         */
+        private class Decoder {
+            private byte[] out;
+            private int size = 0;
+            private int position = 1;
+            private int buff = 0;
+            private boolean ended = false;
+            private long index = 0;
+
+            private Decoder(int capacity) { out = new byte[capacity]; }
+
+            /**
+             * Conversion exception with index of processed input char.
+             */
+            private RuntimeException failed(Exception e) {
+                return AsRuntimeEx.wrapArgument(e, "conversion failed at index {}", index);
+            }
+
+            private byte[] result() {
+                if(size == out.length) return out;
+                return Arrays.copyOf(out, size);
+            }
+
+            /**
+             * Decodes chars until end of block or padding.
+             */
+            private void decode(char[] in, int from, int to) {
+                byte[] table = Coder.this.table;
+                int i = from;
+                while((i < to) && !ended) {
+                    // whole quaternion at once if all chars are valid
+                    if((position == 1) && (i + 4 <= to)) {
+                        char c1 = in[i];
+                        char c2 = in[i + 1];
+                        char c3 = in[i + 2];
+                        char c4 = in[i + 3];
+                        if((c1 | c2 | c3 | c4) < 256) {
+                            int v = table[c1] | table[c2] | table[c3] | table[c4];
+                            if(v >= 0) {
+                                int bits = (table[c1] << 18) | (table[c2] << 12) | (table[c3] << 6) | table[c4];
+                                out[size++] = (byte)(bits >> 16);
+                                out[size++] = (byte)(bits >> 8);
+                                out[size++] = (byte)bits;
+                                i += 4;
+                                continue;
+                            }
+                        }
+                    }
+                    char c = in[i++];
+                    step(c, value(c), i - from);
+                }
+                index += i - from;
+            }
+
+            /**
+             * Decodes ascii bytes until end of block or padding.
+             */
+            private void decode(byte[] in, int from, int to) {
+                byte[] table = Coder.this.table;
+                int i = from;
+                while((i < to) && !ended) {
+                    if((position == 1) && (i + 4 <= to)) {
+                        int v1 = table[in[i] & 0xff];
+                        int v2 = table[in[i + 1] & 0xff];
+                        int v3 = table[in[i + 2] & 0xff];
+                        int v4 = table[in[i + 3] & 0xff];
+                        if((v1 | v2 | v3 | v4) >= 0) {
+                            int bits = (v1 << 18) | (v2 << 12) | (v3 << 6) | v4;
+                            out[size++] = (byte)(bits >> 16);
+                            out[size++] = (byte)(bits >> 8);
+                            out[size++] = (byte)bits;
+                            i += 4;
+                            continue;
+                        }
+                    }
+                    int c = in[i++] & 0xff;
+                    step((char)c, table[c], i - from);
+                }
+                index += i - from;
+            }
+
+            private void step(char c, int cint, int processed) {
+                if(cint == IGNORABLE) return;
+                if(cint == END) {
+                    ended = true;
+                    return;
+                }
+                if(cint == INVALID) {
+                    index += processed;
+                    throw new IllegalArgumentException("The char '"+c+"' is not valid base64 char.");
+                }
+                switch(position) {
+                    case 1:
+                        buff = (cint << 2);
+                        break;
+                    case 2:
+                        buff = buff | (cint >> 4);
+                        out[size++] = (byte)buff;
+                        buff = (cint << 4);
+                        break;
+                    case 3:
+                        buff = buff | (cint >> 2);
+                        out[size++] = (byte)buff;
+                        buff = (cint << 6);
+                        break;
+                    case 4:
+                        buff = buff | cint;
+                        out[size++] = (byte)buff;
+                        buff = 0;
+                        break;
+                }
+                position++;
+                if(position >= 5) position = 1;
+            }
+        }
+
+        /**
+         * Maximal number of bytes decoded from given number of chars.
+         */
+        private static int capacity(int length) {
+            return (int)(((long)length + 3) / 4 * 3);
         }
 
         /**
@@ -157,46 +298,25 @@ public class Base64 {
          */
         public void decode(Reader reader, OutputStream os) {
             if(reader == null) return;
-            int index = 1;
+            // buffer starts small for short values and grows for long ones
+            char[] buffer = new char[128];
+            Decoder decoder = new Decoder(capacity(buffer.length));
             try {
-
-                int position = 1;
-                int buff = 0;
-                int c = reader.read(); while( ignorable(c)) c = reader.read();
-                while((c > -1) && (c != padding)) {
-                    int cint = char2int((char)c);
-                    switch(position) {
-                        case 1:
-                            buff = (cint << 2);
-                            break;
-                        case 2:
-                            buff = buff | (cint >> 4);
-                            os.write(buff);
-                            buff = (cint << 4);
-                            break;
-                        case 3:
-                            buff = buff | (cint >> 2);
-                            os.write(buff);
-                            buff = (cint << 6);
-                            break;
-                        case 4:
-                            buff = buff | cint;
-                            os.write(buff);
-                            buff = 0;
-                            break;
+                int n = reader.read(buffer);
+                while((n > -1) && !decoder.ended) {
+                    decoder.decode(buffer, 0, n);
+                    os.write(decoder.out, 0, decoder.size);
+                    decoder.size = 0;
+                    if((n == buffer.length) && (buffer.length < BUFFER_SIZE)) {
+                        buffer = new char[buffer.length * 4];
+                        decoder.out = new byte[capacity(buffer.length)];
                     }
-
-                    c = reader.read(); while( ignorable(c)) c = reader.read();
-                    index++;
-                    position++;
-                    if(position >= 5) position = 1;
+                    if(!decoder.ended) n = reader.read(buffer);
                 }
-
-                //if(position > 1) os.write(buff);
-
-
+            } catch(IllegalArgumentException e) {
+                throw decoder.failed(e);
             } catch(Exception e) {
-                throw AsRuntimeEx.argument(e, "conversion failed at index " + index);
+                throw AsRuntimeEx.argument(e, "conversion failed at index {}", decoder.index);
             }
         }
 
@@ -206,15 +326,150 @@ public class Base64 {
          * @return resulting bytes
          */
         public byte[] decode(String value) {
-            if(value == null) return null;
-            if("".equals(value)) return new byte[0];
+            return decode((CharSequence)value);
+        }
 
+        /**
+         * Decodes base64 chars into bytes. Chars are decoded by blocks 
+         * without any reader or stream.
+         * @param value - base64 encoded data
+         * @return resulting bytes
+         */
+        public byte[] decode(CharSequence value) {
+            if(value == null) return null;
             int length = value.length();
-            int quaternionNum = length / 4;
-            StringReader reader = new StringReader(value);
-            ByteArrayOutputStream os = new ByteArrayOutputStream((quaternionNum+10)*3);
-            decode(reader, os);
-            return os.toByteArray();
+            Decoder decoder = new Decoder(capacity(length));
+            char[] buffer = new char[Math.min(length, BUFFER_SIZE)];
+            try {
+                for(int from = 0; (from < length) && !decoder.ended; from += buffer.length) {
+                    int to = Math.min(length, from + buffer.length);
+                    if(value instanceof String) {
+                        ((String)value).getChars(from, to, buffer, 0);
+                    } else if(value instanceof StringBuilder) {
+                        ((StringBuilder)value).getChars(from, to, buffer, 0);
+                    } else {
+                        for(int i = from; i < to; i++) buffer[i - from] = value.charAt(i);
+                    }
+                    decoder.decode(buffer, 0, to - from);
+                }
+            } catch(IllegalArgumentException e) {
+                throw decoder.failed(e);
+            }
+            return decoder.result();
+        }
+
+        /**
+         * Decodes base64 chars into bytes.
+         * @param value - base64 encoded data
+         * @return resulting bytes
+         */
+        public byte[] decode(char[] value) {
+            if(value == null) return null;
+            Decoder decoder = new Decoder(capacity(value.length));
+            try {
+                decoder.decode(value, 0, value.length);
+            } catch(IllegalArgumentException e) {
+                throw decoder.failed(e);
+            }
+            return decoder.result();
+        }
+
+        /**
+         * Decodes base64 data given as ascii bytes into bytes.
+         * @param value - base64 encoded data
+         * @return resulting bytes
+         */
+        public byte[] decode(byte[] value) {
+            if(value == null) return null;
+            Decoder decoder = new Decoder(capacity(value.length));
+            try {
+                decoder.decode(value, 0, value.length);
+            } catch(IllegalArgumentException e) {
+                throw decoder.failed(e);
+            }
+            return decoder.result();
+        }
+
+        /**
+         * Encoding state which can be fed by blocks of bytes. Incomplete
+         * triplet is kept for next block. Line is wrapped after each wrap
+         * chars (padding included).
+         */
+        private class Encoder {
+            private final byte[] rest = new byte[3];
+            private int restSize = 0;
+            private int position = 0;
+            private char[] out;
+            private int size = 0;
+
+            private Encoder(int length) { out = new char[capacity(length)]; }
+
+            /**
+             * Maximal number of chars encoded from given number of bytes.
+             */
+            private int capacity(int length) {
+                int chars = (length + 2) / 3 * 4 + 4;
+                if(wrap > 0) chars = chars + chars / wrap + 1;
+                return chars;
+            }
+
+            private void ensure(int length) {
+                int capacity = capacity(length + restSize);
+                if(out.length - size < capacity) out = Arrays.copyOf(out, size + capacity);
+            }
+
+            private void put(char c) {
+                out[size++] = c;
+                if(wrap > 0) {
+                    position++;
+                    if(position >= wrap) {
+                        out[size++] = '\n';
+                        position = 0;
+                    }
+                }
+            }
+
+            private void triplet(int byte1, int byte2, int byte3) {
+                char[] chars = baseChars;
+                int bits = (byte1 << 16) | (byte2 << 8) | byte3;
+                if(wrap > 0) {
+                    put(chars[bits >> 18]);
+                    put(chars[(bits >> 12) & 0x3f]);
+                    put(chars[(bits >> 6) & 0x3f]);
+                    put(chars[bits & 0x3f]);
+                } else {
+                    out[size++] = chars[bits >> 18];
+                    out[size++] = chars[(bits >> 12) & 0x3f];
+                    out[size++] = chars[(bits >> 6) & 0x3f];
+                    out[size++] = chars[bits & 0x3f];
+                }
+            }
+
+            private void update(byte[] in, int from, int length) {
+                ensure(length);
+                int i = from;
+                int to = from + length;
+                while((restSize > 0) && (restSize < 3) && (i < to)) rest[restSize++] = in[i++];
+                if(restSize == 3) {
+                    triplet(rest[0] & 0xff, rest[1] & 0xff, rest[2] & 0xff);
+                    restSize = 0;
+                }
+                for(; i + 3 <= to; i += 3) triplet(in[i] & 0xff, in[i + 1] & 0xff, in[i + 2] & 0xff);
+                while(i < to) rest[restSize++] = in[i++];
+            }
+
+            private void finish() {
+                ensure(0);
+                if(restSize == 0) return;
+                int byte1 = rest[0] & 0xff;
+                int byte2 = restSize > 1 ? rest[1] & 0xff : 0;
+                put(baseChars[byte1 >> 2]);
+                put(baseChars[(byte1 << 4) & 0x3f | (byte2 >> 4)]);
+                if(restSize == 2) put(baseChars[(byte2 << 2) & 0x3f]);
+                else if(padding != 0) put(padding);
+                if(padding != 0) put(padding);
+                restSize = 0;
+            }
         }
 
         /**
@@ -224,68 +479,171 @@ public class Base64 {
          */
         public void encode(InputStream is, Appendable appendable) {
             if(is == null) return;
-            int index = 1;
+            long index = 1;
             try {
-                int position = 0;
-
-                int byte1 = is.read();
-                int byte2 = is.read();
-                int byte3 = is.read();
-                int len = 3;
-                if(byte1 < 0) len = 0;
-                else if(byte2 < 0) len = 1;
-                else if(byte3 < 0) len = 2;
-                else len = 3;
-                byte1 = byte1 < 0 ? 0 : byte1 & 0xff;
-                byte2 = byte2 < 0 ? 0 : byte2 & 0xff;
-                byte3 = byte3 < 0 ? 0 : byte3 & 0xff;
+                // buffer starts small for short values and grows for long ones
+                byte[] buffer = new byte[96];
+                Encoder encoder = new Encoder(buffer.length);
+                int n = is.read(buffer);
+                while(n > -1) {
+                    encoder.update(buffer, 0, n);
+                    append(appendable, encoder.out, encoder.size);
+                    encoder.size = 0;
+                    index += n;
+                    if((n == buffer.length) && (buffer.length < BUFFER_SIZE)) buffer = new byte[buffer.length * 4];
+                    n = is.read(buffer);
+                }
+                encoder.finish();
+                append(appendable, encoder.out, encoder.size);
+            } catch(Exception e) {
+                throw AsRuntimeEx.argument(e, "conversion failed at index " + index);
+            }
+        }
 
+        private void append(Appendable appendable, char[] chars, int length) throws IOException {
+            if(length == 0) return;
+            if(appendable instanceof StringBuilder) ((StringBuilder)appendable).append(chars, 0, length);
+            else if(appendable instanceof Writer) ((Writer)appendable).write(chars, 0, length);
+            else appendable.append(CharBuffer.wrap(chars, 0, length));
+        }
+
+        private void checkAscii() {
+            boolean ascii = padding < 128;
+            for(char c : baseChars) ascii = ascii && (c < 128);
+            if(!ascii) throw new IllegalArgumentException("Bytes are supported only for ascii base chars");
+        }
+
+        /**
+         * Stream which encodes written bytes and writes them to given stream
+         * as ascii chars. Data are encoded by blocks. Close of stream 
+         * writes last incomplete triplet (with padding) and closes given 
+         * stream.
+         * @param os target of encoded data
+         * @return encoding stream
+         */
+        public OutputStream wrap(OutputStream os) {
+            if(os == null) throw new IllegalArgumentException("No output stream");
+            checkAscii();
+            return new EncodingOutputStream(os);
+        }
+
+        /**
+         * Stream which reads ascii base64 data from given stream and returns
+         * decoded bytes. Data are decoded by blocks. Reading ends at the end
+         * of given stream or at padding.
+         * @param is source of encoded data
+         * @return decoding stream
+         */
+        public InputStream wrap(InputStream is) {
+            if(is == null) throw new IllegalArgumentException("No input stream");
+            checkAscii();
+            return new DecodingInputStream(is);
+        }
+
+        private class EncodingOutputStream extends OutputStream {
+            private final OutputStream os;
+            private final Encoder encoder = new Encoder(BUFFER_SIZE);
+            private byte[] bytes = new byte[encoder.out.length];
+            private final byte[] single = new byte[1];
+            private boolean closed = false;
+
+            private EncodingOutputStream(OutputStream os) { this.os = os; }
+
+            @Override
+            public void write(int b) throws IOException {
+                single[0] = (byte)b;
+                write(single, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if(closed) throw new IOException("Stream is closed");
                 while(len > 0) {
+                    int n = Math.min(len, BUFFER_SIZE);
+                    encoder.update(b, off, n);
+                    // small writes are collected in encoder buffer
+                    if(encoder.size >= BUFFER_SIZE) writeOut();
+                    off += n;
+                    len -= n;
+                }
+            }
 
-                    if(len == 3) {
-                        int char1 = byte1 >> 2; // first 6 bytes
-                        int char2 = (byte1 << 4)&0x3f | (byte2 >> 4); // second 6 bytes
-                        int char3 = (byte2 << 2)&0x3f | (byte3 >> 6); // third 6 bytes
-                        int char4 = byte3 & 0x3f; // fourth 6 bytes
-                        position = append(appendable, baseChars[char1], position, wrap);
-                        position = append(appendable, baseChars[char2], position, wrap);
-                        position = append(appendable, baseChars[char3], position, wrap);
-                        position = append(appendable, baseChars[char4], position, wrap);
-                    } else if(len == 2) {
-                        int char1 = byte1 >> 2; // first 6 bytes
-                        int char2 = (byte1 << 4)&0x3f | (byte2 >> 4); // second 6 bytes
-                        int char3 = (byte2 << 2)&0x3f | (byte3 >> 6); // third 6 bytes
-                        position = append(appendable, baseChars[char1], position, wrap);
-                        position = append(appendable, baseChars[char2], position, wrap);
-                        position = append(appendable, baseChars[char3], position, wrap);
-                        if(padding != 0) position = append(appendable, padding, position, wrap);
-                    } else if(len == 1) {
-                        int char1 = byte1 >> 2; // first 6 bytes
-                        int char2 = (byte1 << 4)&0x3f | (byte2 >> 4); // second 6 bytes
-                        position = append(appendable, baseChars[char1], position, wrap);
-                        position = append(appendable, baseChars[char2], position, wrap);
-                        if(padding != 0) position = append(appendable, padding, position, wrap);
-                        if(padding != 0) position = append(appendable, padding, position, wrap);
-                    }
+            private void writeOut() throws IOException {
+                int size = encoder.size;
+                if(size == 0) return;
+                if(bytes.length < size) bytes = new byte[encoder.out.length];
+                char[] chars = encoder.out;
+                for(int i = 0; i < size; i++) bytes[i] = (byte)chars[i];
+                os.write(bytes, 0, size);
+                encoder.size = 0;
+            }
 
+            @Override
+            public void flush() throws IOException {
+                writeOut();
+                os.flush();
+            }
 
-                    byte1 = is.read();
-                    byte2 = is.read();
-                    byte3 = is.read();
-                    if(byte1 < 0) len = 0;
-                    else if(byte2 < 0) len = 1;
-                    else if(byte3 < 0) len = 2;
-                    else len = 3;
-                    byte1 = byte1 < 0 ? 0 : byte1 & 0xff;
-                    byte2 = byte2 < 0 ? 0 : byte2 & 0xff;
-                    byte3 = byte3 < 0 ? 0 : byte3 & 0xff;
+            @Override
+            public void close() throws IOException {
+                if(closed) return;
+                closed = true;
+                encoder.finish();
+                writeOut();
+                os.close();
+            }
+        }
 
-                    index++;
+        private class DecodingInputStream extends InputStream {
+            private final InputStream is;
+            private final byte[] buffer = new byte[BUFFER_SIZE];
+            private final Decoder decoder = new Decoder(capacity(BUFFER_SIZE));
+            private final byte[] single = new byte[1];
+            private int pos = 0;
+
+            private DecodingInputStream(InputStream is) { this.is = is; }
+
+            /**
+             * Decodes next block.
+             * @return false at the end of data
+             */
+            private boolean fill() throws IOException {
+                while(pos >= decoder.size) {
+                    if(decoder.ended) return false;
+                    int n = is.read(buffer);
+                    if(n < 0) return false;
+                    decoder.size = 0;
+                    pos = 0;
+                    try {
+                        decoder.decode(buffer, 0, n);
+                    } catch(IllegalArgumentException e) {
+                        throw decoder.failed(e);
+                    }
                 }
-            } catch(Exception e) {
-                throw AsRuntimeEx.argument(e, "conversion failed at index " + index);
+                return true;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int n = read(single, 0, 1);
+                return n < 0 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(len == 0) return 0;
+                if(!fill()) return -1;
+                int n = Math.min(len, decoder.size - pos);
+                System.arraycopy(decoder.out, pos, b, off, n);
+                pos += n;
+                return n;
             }
 
+            @Override
+            public int available() throws IOException { return decoder.size - pos; }
+
+            @Override
+            public void close() throws IOException { is.close(); }
         }
 
         /**
@@ -339,34 +697,150 @@ public class Base64 {
             return sb.toString();
         }
 
+        /**
+         * Length of data encoded by encode(byte[]), encodeToBytes() and 
+         * encode(ByteBuffer, ByteBuffer).
+         * @param length number of bytes
+         * @return number of encoded chars
+         */
+        public int encodedLength(int length) {
+            if(length < 0) throw new IllegalArgumentException("Bad length " + length);
+            long triplets = length / 3;
+            int rest = length % 3;
+            long chars = triplets * 4;
+            // wrap counter counts also missing padding (as encode(byte[]) does)
+            long counted = chars;
+            if(rest == 1) {
+                chars += padding != 0 ? 4 : 2;
+                counted += 3;
+            } else if(rest == 2) {
+                chars += padding != 0 ? 4 : 3;
+                counted += 3;
+            }
+            if(wrap > 0) chars += counted / wrap;
+            if(chars > Integer.MAX_VALUE) throw new IllegalArgumentException("Encoded length is too big for " + length);
+            return (int)chars;
+        }
 
-    }
+        /**
+         * Encodes bytes to ascii bytes. Result is the same as bytes of 
+         * encode(byte[]), but no string is created.
+         * @param value bytes to be encoded
+         * @return encoded data
+         */
+        public byte[] encodeToBytes(byte[] value) {
+            if(value == null) return null;
+            checkAscii();
+            byte[] rv = new byte[encodedLength(value.length)];
+            encodeBuffer(ByteBuffer.wrap(value), ByteBuffer.wrap(rv));
+            return rv;
+        }
 
-    private static boolean ignorable(int c) {
-        switch(c) {
-            case '\n':
-            case '\r':
-            case '\t':
-            case ' ':
-                return true;
-            default:
-                return false;
+        /**
+         * Encodes remaining bytes of src as ascii bytes into dst. Both 
+         * buffers are moved by processed data. Result is the same as 
+         * bytes of encode(byte[]).
+         * @param src bytes to be encoded
+         * @param dst target buffer (heap or direct one)
+         * @return number of written bytes
+         * @throws BufferOverflowException if dst has not enough space (see encodedLength())
+         */
+        public int encode(ByteBuffer src, ByteBuffer dst) {
+            if((src == null) || (dst == null)) throw new IllegalArgumentException("No buffer");
+            checkAscii();
+            int length = encodedLength(src.remaining());
+            if(dst.remaining() < length) throw new BufferOverflowException();
+            encodeBuffer(src, dst);
+            return length;
         }
-    }
 
-    private static int append(Appendable appendable, char c, int position, int wrapLen) throws IOException {
-        appendable.append(c);
-        if(wrapLen > 0) {
-            position++;
-            if(position >= wrapLen) {
-                appendable.append('\n');
-                position = 0;
+        private void encodeBuffer(ByteBuffer src, ByteBuffer dst) {
+            int length = src.remaining();
+            int tripletNum = length / 3;
+            int tripletRest = length % 3;
+            int linelen = 1;
+            char[] chars = baseChars;
+            for(int i = 0; i < tripletNum; i++) {
+                int bits = ((src.get() & 0xff) << 16) | ((src.get() & 0xff) << 8) | (src.get() & 0xff);
+                if(wrap > 0) {
+                    linelen = put(dst, chars[bits >> 18], linelen);
+                    linelen = put(dst, chars[(bits >> 12) & 0x3f], linelen);
+                    linelen = put(dst, chars[(bits >> 6) & 0x3f], linelen);
+                    linelen = put(dst, chars[bits & 0x3f], linelen);
+                } else {
+                    dst.put((byte)chars[bits >> 18]);
+                    dst.put((byte)chars[(bits >> 12) & 0x3f]);
+                    dst.put((byte)chars[(bits >> 6) & 0x3f]);
+                    dst.put((byte)chars[bits & 0x3f]);
+                }
+            }
+            // tail is written the same way as by encode(byte[])
+            if(tripletRest > 0) {
+                int byte0 = src.get() & 0xff;
+                dst.put((byte)chars[byte0 >> 2]);
+                if(tripletRest == 1) {
+                    linelen = put(dst, chars[(byte0 << 4) & 0x3f], linelen);
+                    linelen = put(dst, padding, linelen);
+                    linelen = put(dst, padding, linelen);
+                } else {
+                    int byte1 = src.get() & 0xff;
+                    linelen = put(dst, chars[(byte0 << 4) & 0x3f | (byte1 >> 4)], linelen);
+                    linelen = put(dst, chars[(byte1 << 2) & 0x3f], linelen);
+                    linelen = put(dst, padding, linelen);
+                }
             }
         }
-        return position;
-    }
+
+        private int put(ByteBuffer dst, char c, int linelen) {
+            if(c != 0) dst.put((byte)c);
+            if((wrap > 0) && (linelen++ >= wrap)) {
+                linelen = 1;
+                dst.put((byte)'\n');
+            }
+            return linelen;
+        }
+
+        /**
+         * Decodes remaining ascii base64 data of src into dst. Both buffers
+         * are moved by processed data. Decoding stops at padding, but
+         * whole src is consumed.
+         * @param src encoded data
+         * @param dst target buffer (heap or direct one)
+         * @return number of written bytes
+         * @throws BufferOverflowException if dst has not enough space
+         */
+        public int decode(ByteBuffer src, ByteBuffer dst) {
+            if((src == null) || (dst == null)) throw new IllegalArgumentException("No buffer");
+            int length = src.remaining();
+            Decoder decoder = new Decoder(capacity(Math.min(length, BUFFER_SIZE)));
+            byte[] buffer = src.hasArray() ? null : new byte[Math.min(length, BUFFER_SIZE)];
+            int written = 0;
+            while(src.hasRemaining() && !decoder.ended) {
+                int n = Math.min(src.remaining(), BUFFER_SIZE);
+                try {
+                    if(buffer == null) {
+                        int from = src.arrayOffset() + src.position();
+                        decoder.decode(src.array(), from, from + n);
+                        src.position(src.position() + n);
+                    } else {
+                        src.get(buffer, 0, n);
+                        decoder.decode(buffer, 0, n);
+                    }
+                } catch(IllegalArgumentException e) {
+                    throw decoder.failed(e);
+                }
+                if(dst.remaining() < decoder.size) throw new BufferOverflowException();
+                dst.put(decoder.out, 0, decoder.size);
+                written += decoder.size;
+                decoder.size = 0;
+            }
+            src.position(src.limit());
+            return written;
+        }
 
 
+    }
+
     private static final char baseCharsStandard[] = {
       // 0    1    2    3    4    5    6    7    8    9
         'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J',  // 00
@@ -389,6 +863,17 @@ public class Base64 {
         '8', '9', '-', '_'                                 // 60
     };
 
+    /**
+     * Coders built by builders, so same configuration shares one (immutable)
+     * coder with its tables. Number of registered coders is limited,
+     * coders of other configurations are not shared.
+     */
+    private static final int REGISTRY_LIMIT = 64;
+    private static final ConcurrentHashMap<String, Coder> registry = new ConcurrentHashMap<String, Coder>();
+
+    private static final Coder STANDARD = Base64.standardBased().padding('=').build();
+    private static final Coder URL = Base64.urlBased().nopadding().build();
+
     public static Builder standardBased() { return new Builder(baseCharsStandard); }
     public static Builder urlBased() { return new Builder(baseCharsUrl); }
     public static Builder otherBased(char pluss, char slash) {
@@ -412,8 +897,20 @@ public class Base64 {
         public Builder nopadding() { this.padding = 0; return this; }
         public Builder wrap(int value) { this.wrap = value; return this; }
 
+        /**
+         * Coder for configuration. Coders are shared, so same instance
+         * is returned for same configuration.
+         * @return coder
+         */
         public Coder build() {
-            return new Coder(baseChars, padding, wrap);
+            // 64 base chars, padding and wrap
+            String key = new StringBuilder(70).append(baseChars).append(padding).append(wrap).toString();
+            Coder coder = registry.get(key);
+            if(coder != null) return coder;
+            coder = new Coder(baseChars, padding, wrap);
+            if(registry.size() >= REGISTRY_LIMIT) return coder;
+            Coder registered = registry.putIfAbsent(key, coder);
+            return registered == null ? coder : registered;
         }
 
     }
@@ -86,7 +86,7 @@ public class Bytes {
         try {
             int rv = 0;
             int num = 0;
-            byte[] buff = new byte[1024];
+            byte[] buff = new byte[8192];
             while ((num = is.read(buff, 0, buff.length)) != -1) {
                 os.write(buff, 0, num);
                 rv = rv + num;
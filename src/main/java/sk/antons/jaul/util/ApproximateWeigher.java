@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import sk.antons.jaul.xml.Elem;
+
+/**
+ * Weigher which estimates heap size of String, byte[], char[] and Elem.
+ *
+ * @author antons
+ */
+final class ApproximateWeigher implements Weigher<Object, Object> {
+
+    static final ApproximateWeigher INSTANCE = new ApproximateWeigher();
+
+    private ApproximateWeigher() {}
+
+    @Override
+    public int weigh(Object key, Object value) {
+        long rv = sizeOf(key) + sizeOf(value);
+        return rv > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)rv;
+    }
+
+    static long sizeOf(Object value) {
+        if(value == null) return 0;
+        if(value instanceof String) return sizeOf((String)value);
+        if(value instanceof byte[]) return 16 + ((byte[])value).length;
+        if(value instanceof char[]) return 16 + 2L * ((char[])value).length;
+        if(value instanceof Elem) return sizeOf((Elem)value);
+        return 16;
+    }
+
+    private static long sizeOf(String value) {
+        if(value == null) return 0;
+        return 40 + 2L * value.length();
+    }
+
+    private static long sizeOf(Elem elem) {
+        long rv = 0;
+        // elem, name and children list
+        rv += 96 + sizeOf(elem.name().prefixedName()) + sizeOf(elem.text());
+        int len = elem.attributeSize();
+        for(int i = 0; i < len; i++) {
+            Elem.Attr attr = elem.attribute(i);
+            rv += 64 + sizeOf(attr.name().prefixedName()) + sizeOf(attr.value());
+        }
+        len = elem.childrenSize();
+        for(int i = 0; i < len; i++) {
+            rv += 8 + sizeOf(elem.child(i));
+        }
+        return rv;
+    }
+}
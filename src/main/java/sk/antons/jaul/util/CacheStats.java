@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+/**
+ * Snapshot of cache statistics. Counters are collected from cache creation
+ * (or from recordStats(true) call). Use minus() to get statistics for interval.
+ *
+ * @author antons
+ */
+public class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, long expirationCount
+            , long loadSuccessCount, long loadFailureCount, long totalLoadTime) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+    }
+
+    /**
+     * Statistics with all counters set to zero.
+     * @return empty statistics
+     */
+    public static CacheStats empty() { return new CacheStats(0, 0, 0, 0, 0, 0, 0); }
+
+    /**
+     * Number of get calls which found value.
+     * @return hit count
+     */
+    public long hitCount() { return hitCount; }
+    /**
+     * Number of get calls which did not find value.
+     * @return miss count
+     */
+    public long missCount() { return missCount; }
+    /**
+     * Number of get calls.
+     * @return request count
+     */
+    public long requestCount() { return hitCount + missCount; }
+    /**
+     * Ratio of hits to requests (1.0 if there was no request).
+     * @return hit rate
+     */
+    public double hitRate() {
+        long requests = requestCount();
+        return requests == 0 ? 1.0 : ((double)hitCount) / requests;
+    }
+    /**
+     * Ratio of misses to requests (0.0 if there was no request).
+     * @return miss rate
+     */
+    public double missRate() {
+        long requests = requestCount();
+        return requests == 0 ? 0.0 : ((double)missCount) / requests;
+    }
+    /**
+     * Number of entries removed because of limit or maximum weight.
+     * @return eviction count
+     */
+    public long evictionCount() { return evictionCount; }
+    /**
+     * Number of entries removed because of expiration.
+     * @return expiration count
+     */
+    public long expirationCount() { return expirationCount; }
+    /**
+     * Number of successful loads (LoadingMapCache only).
+     * @return load success count
+     */
+    public long loadSuccessCount() { return loadSuccessCount; }
+    /**
+     * Number of loads which throws exception (LoadingMapCache only).
+     * @return load failure count
+     */
+    public long loadFailureCount() { return loadFailureCount; }
+    /**
+     * Number of loads.
+     * @return load count
+     */
+    public long loadCount() { return loadSuccessCount + loadFailureCount; }
+    /**
+     * Time spent by loading in nanoseconds.
+     * @return total load time
+     */
+    public long totalLoadTime() { return totalLoadTime; }
+    /**
+     * Average time of one load in nanoseconds.
+     * @return average load time
+     */
+    public double averageLoadPenalty() {
+        long loads = loadCount();
+        return loads == 0 ? 0.0 : ((double)totalLoadTime) / loads;
+    }
+
+    /**
+     * Difference between this and other statistics.
+     * @param other older statistics
+     * @return statistics for interval between other and this
+     */
+    public CacheStats minus(CacheStats other) {
+        if(other == null) return this;
+        return new CacheStats(
+            Math.max(0, hitCount - other.hitCount)
+            , Math.max(0, missCount - other.missCount)
+            , Math.max(0, evictionCount - other.evictionCount)
+            , Math.max(0, expirationCount - other.expirationCount)
+            , Math.max(0, loadSuccessCount - other.loadSuccessCount)
+            , Math.max(0, loadFailureCount - other.loadFailureCount)
+            , Math.max(0, totalLoadTime - other.totalLoadTime)
+        );
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits: " + hitCount
+            + ", misses: " + missCount
+            + ", evictions: " + evictionCount
+            + ", expirations: " + expirationCount
+            + ", loads: " + loadSuccessCount
+            + ", loadFailures: " + loadFailureCount
+            + ", loadTime: " + totalLoadTime
+            + "}";
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+/**
+ * JMX view of cache statistics. See MapCache.registerMBean().
+ *
+ * @author antons
+ */
+public interface CacheStatsMXBean {
+    long getHitCount();
+    long getMissCount();
+    double getHitRate();
+    long getEvictionCount();
+    long getExpirationCount();
+    long getLoadSuccessCount();
+    long getLoadFailureCount();
+    double getAverageLoadPenalty();
+    int getSize();
+}
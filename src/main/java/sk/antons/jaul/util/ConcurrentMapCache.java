@@ -0,0 +1,456 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe variant of MapCache. Keys are partitioned into lock striped
+ * segments. Each segment has its own ordered list of entries and its own lock,
+ * which is used only for modifications. Reads are lock free.
+ *
+ * Size limit is distributed among segments, so eviction is only approximate
+ * (each segment evicts its own oldest entry). Use concurrency 1 if you need
+ * exact limit.
+ *
+ * With recordStats(true) hits, misses, evictions and expirations are counted
+ * by contention free counters.
+ *
+ * With accessOrder(true) read moves entry to the head of its segment list. The
+ * move is done only if segment lock is free, so reads never wait for writers.
+ *
+ * @author antons
+ */
+public class ConcurrentMapCache<K, V> implements Map<K, V> {
+
+    private int limit = -1;
+    private long expiration = -1;
+    private final Segment<K, V>[] segments;
+    private final int shift;
+    private volatile StatsCounter stats = null;
+
+    /**
+     * Creates cache with concurrency 16.
+     */
+    public ConcurrentMapCache() {
+        this(16);
+    }
+
+    /**
+     * Creates cache with given number of segments (rounded up to power of two).
+     * @param concurrency number of segments
+     */
+    public ConcurrentMapCache(int concurrency) {
+        int size = 1;
+        int bits = 0;
+        while(size < concurrency) { size = size << 1; bits++; }
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] array = (Segment<K, V>[])new Segment<?, ?>[size];
+        for(int i = 0; i < size; i++) array[i] = new Segment<K, V>();
+        segments = array;
+        shift = 32 - bits;
+    }
+
+    public static <KK, VV> ConcurrentMapCache<KK, VV> instance(Class<KK> keyType, Class<VV> valueType) {
+        return new ConcurrentMapCache<KK, VV>();
+    }
+
+    public static <KK, VV> ConcurrentMapCache<KK, VV> instance(Class<KK> keyType, Class<VV> valueType, int concurrency) {
+        return new ConcurrentMapCache<KK, VV>(concurrency);
+    }
+
+    public int limit() { return limit; }
+    public ConcurrentMapCache<K, V> limit(int limit) {
+        this.limit = limit;
+        int segmentLimit = -1;
+        if(limit > 0) segmentLimit = Math.max(1, (limit + segments.length - 1) / segments.length);
+        for(Segment<K, V> segment : segments) segment.limit = segmentLimit;
+        return this;
+    }
+
+    public long expiration() { return expiration; }
+    public ConcurrentMapCache<K, V> expiration(long expiration) { this.expiration = expiration; return this; }
+
+    /**
+     * If true hits, misses, evictions and expirations are counted.
+     * @param recordStats true for counting
+     * @return this
+     */
+    public ConcurrentMapCache<K, V> recordStats(boolean recordStats) {
+        StatsCounter counter = recordStats ? (stats == null ? new StatsCounter() : stats) : null;
+        stats = counter;
+        for(Segment<K, V> segment : segments) segment.stats = counter;
+        return this;
+    }
+
+    /**
+     * Snapshot of statistics.
+     * @return current statistics (empty if statistics are not recorded)
+     */
+    public CacheStats stats() {
+        StatsCounter counter = stats;
+        return counter == null ? CacheStats.empty() : counter.snapshot();
+    }
+
+    /**
+     * Registers statistics of this cache as platform MXBean (CacheStatsMXBean).
+     * Statistics recording is switched on.
+     * @param objectName jmx name like 'sk.antons:type=MapCache,name=users'
+     * @return this
+     */
+    public ConcurrentMapCache<K, V> registerMBean(String objectName) {
+        recordStats(true);
+        StatsCounter.register(objectName, this, stats);
+        return this;
+    }
+
+    /**
+     * Unregisters MXBean registered by registerMBean().
+     * @param objectName jmx name
+     * @return this
+     */
+    public ConcurrentMapCache<K, V> unregisterMBean(String objectName) {
+        StatsCounter.unregister(objectName);
+        return this;
+    }
+
+    public boolean accessOrder() { return segments[0].accessOrder; }
+    /**
+     * If true get moves accessed entry to the head of the list so limit evicts
+     * least recently used entry. Otherwise oldest inserted entry is evicted.
+     * @param accessOrder true for LRU, false for FIFO
+     * @return this
+     */
+    public ConcurrentMapCache<K, V> accessOrder(boolean accessOrder) {
+        for(Segment<K, V> segment : segments) segment.accessOrder = accessOrder;
+        return this;
+    }
+
+    private Segment<K, V> segment(Object key) {
+        int h = key.hashCode();
+        h = (h ^ (h >>> 16)) * 0x9E3779B9;
+        return segments[shift == 32 ? 0 : h >>> shift];
+    }
+
+    private long deadline() {
+        long exp = expiration;
+        return exp < 1 ? Long.MAX_VALUE : System.currentTimeMillis() + exp;
+    }
+
+    public int size() {
+        int rv = 0;
+        for(Segment<K, V> segment : segments) rv = rv + segment.count;
+        return rv;
+    }
+
+    public boolean isEmpty() {
+        for(Segment<K, V> segment : segments) {
+            if(segment.count > 0) return false;
+        }
+        return true;
+    }
+
+    public boolean containsKey(Object key) {
+        if(key == null) return false;
+        return segment(key).get(key) != null;
+    }
+
+    public boolean containsValue(Object value) {
+        long time = System.currentTimeMillis();
+        for(Segment<K, V> segment : segments) {
+            for(Node<K, V> node : segment.map.values()) {
+                if(node.time < time) continue;
+                if((value == null) && (node.value == null)) return true;
+                if((value != null) && value.equals(node.value)) return true;
+            }
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        if(key == null) return null;
+        Node<K, V> node = segment(key).get(key);
+        StatsCounter counter = stats;
+        if(node == null) {
+            if(counter != null) counter.miss();
+            return null;
+        }
+        if(counter != null) counter.hit();
+        return node.value;
+    }
+
+    public V put(K key, V value) {
+        if(key == null) throw new IllegalArgumentException("Null key is not allowed");
+        segment(key).put(new Node<K, V>(key, value, deadline()));
+        return value;
+    }
+
+    public V remove(Object key) {
+        if(key == null) return null;
+        Node<K, V> node = segment(key).remove(key);
+        if(node == null) return null;
+        return node.value;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        if(m == null) return ;
+        for(Map.Entry<? extends K, ? extends V> object : m.entrySet()) {
+            put(object.getKey(), object.getValue());
+        }
+    }
+
+    public void clear() {
+        for(Segment<K, V> segment : segments) segment.clear();
+    }
+
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            public Iterator<K> iterator() {
+                final NodeIterator iter = new NodeIterator();
+                return new Iterator<K>() {
+                    public boolean hasNext() { return iter.hasNext(); }
+                    public K next() { return iter.next().key; }
+                    public void remove() { iter.remove(); }
+                };
+            }
+            public int size() { return ConcurrentMapCache.this.size(); }
+            public boolean contains(Object o) { return containsKey(o); }
+            public boolean remove(Object o) { return ConcurrentMapCache.this.remove(o) != null; }
+            public void clear() { ConcurrentMapCache.this.clear(); }
+        };
+    }
+
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            public Iterator<V> iterator() {
+                final NodeIterator iter = new NodeIterator();
+                return new Iterator<V>() {
+                    public boolean hasNext() { return iter.hasNext(); }
+                    public V next() { return iter.next().value; }
+                    public void remove() { iter.remove(); }
+                };
+            }
+            public int size() { return ConcurrentMapCache.this.size(); }
+            public void clear() { ConcurrentMapCache.this.clear(); }
+        };
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            public Iterator<Map.Entry<K, V>> iterator() {
+                final NodeIterator iter = new NodeIterator();
+                return new Iterator<Map.Entry<K, V>>() {
+                    public boolean hasNext() { return iter.hasNext(); }
+                    public Map.Entry<K, V> next() {
+                        Node<K, V> node = iter.next();
+                        return new AbstractMap.SimpleImmutableEntry<K, V>(node.key, node.value);
+                    }
+                    public void remove() { iter.remove(); }
+                };
+            }
+            public int size() { return ConcurrentMapCache.this.size(); }
+            public void clear() { ConcurrentMapCache.this.clear(); }
+        };
+    }
+
+    /**
+     * Weakly consistent iterator over all not expired nodes.
+     */
+    private class NodeIterator {
+        private int segmentIndex = 0;
+        private Iterator<Node<K, V>> iter = null;
+        private Node<K, V> nextone = null;
+        private Node<K, V> last = null;
+        private final long time = System.currentTimeMillis();
+
+        private NodeIterator() {
+            advance();
+        }
+
+        private void advance() {
+            nextone = null;
+            while(true) {
+                if((iter != null) && iter.hasNext()) {
+                    Node<K, V> node = iter.next();
+                    if(node.time < time) continue;
+                    nextone = node;
+                    return;
+                }
+                if(segmentIndex >= segments.length) return;
+                iter = segments[segmentIndex++].map.values().iterator();
+            }
+        }
+
+        public boolean hasNext() { return nextone != null; }
+
+        public Node<K, V> next() {
+            if(nextone == null) throw new NoSuchElementException();
+            last = nextone;
+            advance();
+            return last;
+        }
+
+        public void remove() {
+            if(last == null) throw new IllegalStateException();
+            segment(last.key).removeNode(last);
+            last = null;
+        }
+    }
+
+    private static class Segment<K, V> {
+        private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<K, Node<K, V>>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile int count = 0;
+        private volatile int limit = -1;
+        private volatile boolean accessOrder = false;
+        private volatile StatsCounter stats = null;
+        private Node<K, V> head = null;
+        private Node<K, V> tail = null;
+
+        private Node<K, V> get(Object key) {
+            Node<K, V> node = map.get(key);
+            if(node == null) return null;
+            if((node.time != Long.MAX_VALUE) && (node.time < System.currentTimeMillis())) {
+                if(removeNode(node)) {
+                    StatsCounter counter = stats;
+                    if(counter != null) counter.expiration();
+                }
+                return null;
+            }
+            if(accessOrder && (node != head) && lock.tryLock()) {
+                try {
+                    if(map.get(node.key) == node) {
+                        unlink(node);
+                        link(node);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return node;
+        }
+
+        private void put(Node<K, V> node) {
+            lock.lock();
+            try {
+                Node<K, V> old = map.put(node.key, node);
+                if(old != null) unlink(old);
+                else count++;
+                link(node);
+                StatsCounter counter = stats;
+                if(tail.time != Long.MAX_VALUE) {
+                    long time = System.currentTimeMillis();
+                    while((tail != node) && (tail.time < time)) {
+                        removeLocked(tail);
+                        if(counter != null) counter.expiration();
+                    }
+                }
+                int max = limit;
+                if(max > 0) {
+                    while(count > max) {
+                        removeLocked(tail);
+                        if(counter != null) counter.eviction();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Node<K, V> remove(Object key) {
+            lock.lock();
+            try {
+                Node<K, V> node = map.get(key);
+                if(node == null) return null;
+                removeLocked(node);
+                return node;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean removeNode(Node<K, V> node) {
+            lock.lock();
+            try {
+                if(map.get(node.key) != node) return false;
+                removeLocked(node);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                map.clear();
+                head = null;
+                tail = null;
+                count = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void removeLocked(Node<K, V> node) {
+            map.remove(node.key, node);
+            unlink(node);
+            count--;
+        }
+
+        private void link(Node<K, V> node) {
+            node.prev = null;
+            node.next = head;
+            if(head == null) tail = node;
+            else head.prev = node;
+            head = node;
+        }
+
+        private void unlink(Node<K, V> node) {
+            if(node.prev == null) head = node.next;
+            else node.prev.next = node.next;
+            if(node.next == null) tail = node.prev;
+            else node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+        }
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final long time;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        private Node(K key, V value, long time) {
+            this.key = key;
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+}
@@ -20,15 +20,34 @@ import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.Flushable;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * CSV files helper
@@ -42,6 +61,11 @@ public class Csv {
     private int quote = '"';
     private boolean forceQuotes = false;
     private String nlreplacer = null;
+    private boolean header = false;
+    private int[] columns = null;
+    private String[] columnNames = null;
+    private Predicate<Row> filter = null;
+    private boolean byteScanner = false;
 
     /**
      * Builder instance.
@@ -79,6 +103,65 @@ public class Csv {
      * @return this
      */
     public Csv forceQuotes(boolean value) { this.forceQuotes = value; return this; }
+    /**
+     * First record is header with column names. Iterators and streams do
+     * not return it, but all records have access to it, so fields can be
+     * accessed by Record.column(name). Header is record with row() 0.
+     * @return this
+     */
+    public Csv withHeader() { this.header = true; return this; }
+    boolean header() { return header; }
+    /**
+     * Records contain only given columns in given order. Other fields are
+     * only scanned and never converted to strings.
+     * @param indexes indexes of selected columns
+     * @return this
+     */
+    public Csv columns(int... indexes) {
+        if((indexes == null) || (indexes.length == 0)) throw new IllegalArgumentException("No columns");
+        for(int index : indexes) {
+            if(index < 0) throw new IllegalArgumentException("Bad column index " + index);
+        }
+        this.columns = indexes.clone();
+        this.columnNames = null;
+        return this;
+    }
+    /**
+     * Records contain only given columns in given order. Columns are
+     * found by header (see withHeader()).
+     * @param names names of selected columns
+     * @return this
+     */
+    public Csv columns(String... names) {
+        if((names == null) || (names.length == 0)) throw new IllegalArgumentException("No columns");
+        this.columnNames = names.clone();
+        this.columns = null;
+        return this;
+    }
+    /**
+     * Only rows accepted by filter are converted to records. Filter gets
+     * row with selected columns (see columns()), so rejected rows are only
+     * scanned.
+     * <pre>
+     *  Csv.instance().withHeader()
+     *      .columns("id", "state", "amount")
+     *      .filter(row -&gt; row.equals(1, "FAILED"))
+     *      .stream(is);
+     * </pre>
+     * @param filter row predicate
+     * @return this
+     */
+    public Csv filter(Predicate<Row> filter) { this.filter = filter; return this; }
+    /**
+     * If true, stream input of utf-8 and single byte encodings is read by 
+     * ByteScanner, which decodes only fields converted to strings. Otherwise 
+     * stream is decoded by reader. Default value is false. File streams 
+     * (stream(Path) and parallel()) always use ByteScanner for such encodings,
+     * as their offsets are byte offsets.
+     * @param value true for ByteScanner
+     * @return this
+     */
+    public Csv byteScanner(boolean value) { this.byteScanner = value; return this; }
 
     /**
      * Raw scanner for reading csv.
@@ -87,24 +170,164 @@ public class Csv {
      */
     public Scanner scanner(Reader reader) { return Scanner.instance(reader, delimiter, quote); }
     /**
-     * Raw scanner for reading csv.
+     * Raw scanner for reading csv. See byteScanner(boolean).
      * @param is
      * @return scanner instance
      */
-    public Scanner scanner(InputStream is) { return Scanner.instance(toReader(is), delimiter, quote); }
+    public Scanner scanner(InputStream is) {
+        if(byteScanner) return bytesScanner(is);
+        return Scanner.instance(toReader(is), delimiter, quote);
+    }
+
+    /**
+     * ByteScanner if encoding allows it, otherwise reader based scanner.
+     */
+    Scanner bytesScanner(InputStream is) {
+        Charset charset = charset();
+        if(ByteScanner.supports(charset, delimiter, quote)) return ByteScanner.instance(is, charset, delimiter, quote);
+        return Scanner.instance(toReader(is), delimiter, quote);
+    }
 
     /**
      * Record iterator for reading csv.
      * @param reader
      * @return iterator instance
      */
-    public Iterator<Record> iterator(Reader reader) { return new IteratorImpl(scanner(reader)); }
+    public Iterator<Record> iterator(Reader reader) { return new IteratorImpl(new Records(this, scanner(reader), header, null)); }
     /**
      * Record iterator for reading csv.
      * @param is
      * @return iterator instance
      */
-    public Iterator<Record> iterator(InputStream is) { return new IteratorImpl(scanner(is)); }
+    public Iterator<Record> iterator(InputStream is) { return new IteratorImpl(new Records(this, scanner(is), header, null)); }
+
+    /**
+     * Stream of records. Records are read lazily, so short circuiting 
+     * operations (limit, findFirst, anyMatch) stop reading when they are 
+     * satisfied. Reader is closed when stream is closed or at end of data.
+     * @param reader source of csv data
+     * @return stream of records
+     */
+    public Stream<Record> stream(Reader reader) { return stream(scanner(reader), reader, header, null); }
+    /**
+     * Stream of records. See stream(Reader).
+     * @param is source of csv data
+     * @return stream of records
+     */
+    public Stream<Record> stream(InputStream is) { return stream(scanner(is), is, header, null); }
+
+    private Stream<Record> stream(Scanner scanner, Closeable closeable, boolean withHeader, Header names) {
+        final SpliteratorImpl spliterator = new SpliteratorImpl(this, scanner, closeable, withHeader, names);
+        return StreamSupport.stream(spliterator, false)
+            .onClose(new Runnable() {
+                public void run() { spliterator.close(); }
+            });
+    }
+    /**
+     * Stream of records of given file. See stream(Reader). ByteScanner is 
+     * used if encoding allows it, so Record.end() can be used for resume.
+     * @param file csv file
+     * @return stream of records
+     */
+    public Stream<Record> stream(Path file) {
+        InputStream is = null;
+        try {
+            is = Files.newInputStream(file);
+            return stream(bytesScanner(is), is, header, null);
+        } catch(Throwable e) {
+            close(is, e);
+            if(e instanceof Error) throw (Error)e;
+            throw AsRuntimeEx.argument(e, "Unable to read {}", file);
+        }
+    }
+
+    /**
+     * Stream of records of given file which starts at given offset. It is
+     * used for restart of long imports from checkpoint. Saved checkpoint 
+     * is Record.end() and Record.row() + 1 of last processed record. If
+     * header is used, it is read from beginning of file.
+     * 
+     * Resume requires byte offsets, so encoding must be utf-8 or single 
+     * byte one.
+     * @param file csv file
+     * @param offset byte offset of record start
+     * @param row row number of record at offset
+     * @return stream of records
+     */
+    public Stream<Record> stream(Path file, long offset, int row) {
+        if(offset == 0) return stream(file);
+        if((offset < 0) || (row < 0)) throw new IllegalArgumentException("Bad position " + offset + " row " + row);
+        Charset charset = charset();
+        if(!ByteScanner.supports(charset, delimiter, quote)) {
+            throw new IllegalArgumentException("Resume is not supported for encoding " + encoding);
+        }
+        Header names = header ? readHeader(file) : null;
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            if(offset > channel.size()) throw new IllegalArgumentException("Offset " + offset + " is after end of " + file);
+            channel.position(offset);
+            InputStream is = Channels.newInputStream(channel);
+            Scanner scanner = ByteScanner.instance(is, charset, delimiter, quote);
+            scanner.consumed = offset;
+            scanner.records = row;
+            return stream(scanner, is, false, names);
+        } catch(Throwable e) {
+            // stream closes channel, until it is created it must be closed here
+            close(channel, e);
+            if(e instanceof Error) throw (Error)e;
+            throw AsRuntimeEx.argument(e, "Unable to read {}", file);
+        }
+    }
+
+    private static void close(Closeable closeable, Throwable cause) {
+        if(closeable == null) return;
+        try {
+            closeable.close();
+        } catch(Exception e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Reads header of csv file.
+     * @return header or null for empty file
+     */
+    Header readHeader(Path file) {
+        try {
+            InputStream is = Files.newInputStream(file);
+            try {
+                Row row = Row.instance();
+                if(!bytesScanner(is).next(row)) return null;
+                return Header.instance(row.toRecord());
+            } finally {
+                is.close();
+            }
+        } catch(Exception e) {
+            throw AsRuntimeEx.argument(e, "Unable to read header of {}", file);
+        }
+    }
+
+    /**
+     * Parallel stream of records of csv file. File is memory mapped and split 
+     * into chunks, which are parsed by given number of threads. Chunks are 
+     * split at newlines outside of quoted fields, so quote char must be used 
+     * only for quoting of fields (as standard csv does) and encoding must 
+     * represent newline and quote by single byte (utf-8, iso-8859-x, cp125x). 
+     * 
+     * Records are produced in file order with the same row() numbers as 
+     * sequential iterator. Close stream if it is not consumed completely.
+     * @param file csv file
+     * @param threads number of parsing threads
+     * @return stream of records
+     */
+    public Stream<Record> parallel(Path file, int threads) {
+        final ParallelCsvSpliterator spliterator = new ParallelCsvSpliterator(this, charset(), delimiter, quote, file, threads);
+        return StreamSupport.stream(spliterator, true)
+            .onClose(new Runnable() {
+                public void run() { spliterator.close(); }
+            });
+    }
 
     /**
      * Appender for csv creation.
@@ -117,9 +340,17 @@ public class Csv {
      * @param os
      * @return appender instance
      */
-    public Appender appender(OutputStream os) { return Appender.instance(toWriter(os), delimiter, quote, forceQuotes, nlreplacer); }
+    public Appender appender(OutputStream os) { return Appender.instance(toWriter(os), delimiter, quote, forceQuotes, nlreplacer, Scanner.BUFFER_SIZE); }
 
 
+    private Charset charset() {
+        try {
+            return Charset.forName(encoding);
+        } catch(Exception e) {
+            throw AsRuntimeEx.argument(e, "Unknown encoding {}", encoding);
+        }
+    }
+
     private Reader toReader(InputStream is) {
         try {
             return new InputStreamReader(is, encoding);
@@ -136,57 +367,178 @@ public class Csv {
         }
     }
 
-    private static class BuffReader {
-        int first = 0;
-        int second = 0;
-        Reader reader;
-        private static BuffReader instance(Reader reader) {
-            BuffReader rv = new BuffReader();
-            rv.reader = reader;
-            rv.read();
-            rv.read();
-            return rv;
-        }
-
-        public int read() {
-            try {
-                int rv = first;
-                first = second;
-                second = reader.read();
-                return rv;
-            } catch(Exception e) {
-                throw AsRuntimeEx.state(e);
-            }
-        }
-        int first() { return first; }
-        int second() { return second; }
-    }
-
     /**
      * Iterate cvs stream and generates field and endofrecord eventd.
+     *
+     * Input is read into reusable char[] window. Fields are found by bulk
+     * scanning of window for delimiter, quote and newline and value of
+     * field is created from window by single copy. Quoted fields are
+     * unescaped in place.
+     *
+     * Fields can be also accessed without creating strings by currentChars()
+     * and currentAsXxx() methods or by reading whole records into reusable
+     * Row by next(Row).
      */
     public static class Scanner {
+        private static final int BUFFER_SIZE = 64 * 1024;
         int delimiter = ',';
         int quote = '"';
-        BuffReader reader;
+        Reader reader;
+        char[] buf;
+        int pos = 0;
+        int limit = 0;
+        int mark = 0;
+        int fieldEnd = 0;
+        int keep = -1;
+        int records = 0;
+        long consumed = 0;
+        private final Chars chars = new Chars(this);
         private Scanner() {}
         public static Scanner instance(Reader reader, int delimiter, int quote) {
+            return instance(reader, delimiter, quote, BUFFER_SIZE);
+        }
+        /**
+         * Scanner instance.
+         * @param reader source of csv data
+         * @param delimiter delimiter of fields
+         * @param quote quote character
+         * @param bufferSize initial size of window in chars (window grows
+         * if it is smaller than longest field)
+         * @return scanner instance
+         */
+        public static Scanner instance(Reader reader, int delimiter, int quote, int bufferSize) {
+            if(reader == null) throw new IllegalArgumentException("No reader");
+            if(bufferSize < 1) throw new IllegalArgumentException("Bad buffer size " + bufferSize);
             Scanner rv = new Scanner();
-            rv.reader = BuffReader.instance(reader);
+            rv.reader = reader;
+            rv.buf = new char[bufferSize];
             rv.delimiter = delimiter;
             rv.quote = quote;
             return rv;
         }
 
-        StringBuilder buff = new StringBuilder(300);
         boolean nextWillBeRecordEnd = false;
-        Token lastToken = Token.RECORD_END;
+
+        /**
+         * Offset of first unread char (byte for ByteScanner) from beginning
+         * of data. After next(Row) it is start of next record, so it can be
+         * used as checkpoint for Csv.stream(Path, long, int).
+         * @return offset
+         */
+        public long offset() { return consumed + pos; }
 
         /**
          * After field event returns current value of field.
          * @return value of field
          */
-        public String current() { return buff.toString(); }
+        public String current() { return string(mark, fieldEnd); }
+
+        /**
+         * After field event returns current value of field as view over
+         * scanner buffer. View is reused and it is valid only until next
+         * call of next().
+         * @return value of field
+         */
+        public CharSequence currentChars() { return view(chars, mark, fieldEnd); }
+
+        /**
+         * Current field as int without creating string.
+         * @return value of field
+         * @throws NumberFormatException if field is not integer
+         */
+        public int currentAsInt() { return intValue(mark, fieldEnd); }
+
+        /**
+         * Current field as long without creating string.
+         * @return value of field
+         * @throws NumberFormatException if field is not integer
+         */
+        public long currentAsLong() { return longValue(mark, fieldEnd); }
+
+        /**
+         * Current field as decimal without creating string.
+         * @return value of field (null for empty field)
+         * @throws NumberFormatException if field is not decimal number
+         */
+        public BigDecimal currentAsDecimal() { return decimalValue(mark, fieldEnd); }
+
+        /**
+         * Compares current field with given value without creating string.
+         * @param value compared value
+         * @return true if field is equal to value
+         */
+        public boolean currentEquals(String value) { return equalsValue(mark, fieldEnd, value); }
+
+        /**
+         * Reads next record into given row. Fields of row are not copied, they
+         * stay in scanner buffer and row is valid only until next read.
+         * @param row reusable row
+         * @return false if there is no more record
+         */
+        public boolean next(Row row) {
+            if(row == null) throw new IllegalArgumentException("No row");
+            row.reset(this);
+            // end of previous record (if it was not read by next()) and 
+            // record starts before its first token (quote, delimiter)
+            nextWillBeRecordEnd = false;
+            keep = pos;
+            Token token = next();
+            if(token == null) return false;
+            row.row = records++;
+            row.offset = consumed + keep;
+            while(token == Token.FIELD) {
+                row.add(mark - keep, fieldEnd - keep);
+                token = next();
+            }
+            return true;
+        }
+
+        /**
+         * Reads next part of input. Current field (from mark) or current
+         * record (from keep) is moved
+         * to the beginning of window and window is enlarged if it is full.
+         * @return false if there is no more input
+         */
+        private boolean fill() {
+            int from = keep < 0 ? mark : keep;
+            if(from > 0) {
+                move(from, 0, limit - from);
+                pos -= from;
+                limit -= from;
+                fieldEnd -= from;
+                mark -= from;
+                if(keep > 0) keep = 0;
+                consumed += from;
+            }
+            if(limit == capacity()) grow();
+            try {
+                int n = input();
+                if(n < 0) return false;
+                limit += n;
+                return true;
+            } catch(Exception e) {
+                throw AsRuntimeEx.state(e);
+            }
+        }
+
+        int read() {
+            while(pos >= limit) {
+                if(!fill()) return -1;
+            }
+            return charAt(pos++);
+        }
+
+        int peek() {
+            while(pos >= limit) {
+                if(!fill()) return -1;
+            }
+            return charAt(pos);
+        }
+
+        private void empty() {
+            mark = pos;
+            fieldEnd = pos;
+        }
 
         /**
          * Next event
@@ -200,104 +552,413 @@ public class Csv {
          * @return
          */
         public Token next() {
-            buff.setLength(0);
+            empty();
             if(nextWillBeRecordEnd) {
                 nextWillBeRecordEnd = false;
-                lastToken = Token.RECORD_END;
                 return Token.RECORD_END;
-            } else {
-                lastToken = Token.FIELD;
             }
-            try {
-                int c = reader.read();
-                if(c < 0) return null;
-                if(c == delimiter) {
-                    return Token.FIELD;
-                } else if(c == quote) {
-                    consumeQuoted();
-                    return Token.FIELD;
-                } else if(c == '\n') {
-                    if(lastToken == Token.RECORD_END) {
-                        if(reader.first() == -1) {
-                            return null;
-                        } else {
-                            nextWillBeRecordEnd = true;
-                            return Token.FIELD;
-                        }
-                    } else {
-                        nextWillBeRecordEnd = true;
-                        return Token.FIELD;
-                    }
-                } else if(c == '\r') {
-                    if(lastToken == Token.RECORD_END) {
-                        if((reader.first() == '\n') && (reader.first() == -1)) {
-                            return null;
-                        } else {
-                            reader.read();
-                            nextWillBeRecordEnd = true;
-                            return Token.FIELD;
-                        }
-                    } else {
-                        reader.read();
-                        nextWillBeRecordEnd = true;
-                        return Token.FIELD;
-                    }
-                } else {
-                    buff.append((char)c);
-                    consumeUnquoted();
-                    return Token.FIELD;
-                }
-            } catch(Exception e) {
-                throw AsRuntimeEx.state(e);
+            int c = read();
+            if(c < 0) {
+                empty();
+                return null;
             }
-        }
-
-        private void consumeUnquoted() {
-            skipToFieldEnd(true);
+            if(c == delimiter) {
+                empty();
+            } else if(c == quote) {
+                empty();
+                consumeQuoted();
+            } else if(c == '\n') {
+                empty();
+                nextWillBeRecordEnd = true;
+            } else if(c == '\r') {
+                skipChar();
+                empty();
+                nextWillBeRecordEnd = true;
+            } else {
+                // mark points to c
+                fieldEnd = pos;
+                skipToFieldEnd(true);
+            }
+            return Token.FIELD;
         }
 
         private void consumeQuoted() {
-            int c = reader.read();
-            while((c != -1)) {
-                if(c == quote) {
-                    if(reader.first() == quote) {
-                        reader.read();
-                    } else {
-                        break;
-                    }
+            while(true) {
+                if((pos >= limit) && !fill()) break;
+                int i = pos;
+                while((i < limit) && (charAt(i) != quote)) i++;
+                int length = i - pos;
+                if(fieldEnd != pos) move(pos, fieldEnd, length);
+                fieldEnd += length;
+                pos = i;
+                if(i == limit) continue;
+                pos++;
+                if(peek() == quote) {
+                    pos++;
+                    set(fieldEnd++, quote);
+                } else {
+                    break;
                 }
-                buff.append((char)c);
-                c = reader.read();
             }
             skipToFieldEnd(false);
         }
 
         private void skipToFieldEnd(boolean store) {
-            int c = reader.read();
-            while((c != -1)) {
+            while(true) {
+                if((pos >= limit) && !fill()) {
+                    nextWillBeRecordEnd = true;
+                    return;
+                }
+                int i = pos;
+                while(i < limit) {
+                    char c = charAt(i);
+                    if((c == delimiter) || (c == '\n') || (c == '\r')) break;
+                    i++;
+                }
+                pos = i;
+                if(store) fieldEnd = i;
+                if(i == limit) continue;
+                char c = charAt(pos++);
                 if(c == delimiter) {
-                    break;
+                    return;
                 } else if(c == '\n') {
                     nextWillBeRecordEnd = true;
-                    if(reader.first == -1) reader.read();
-                    break;
-                } else if(c == '\r') {
-                    if(reader.first == '\n') {
-                        nextWillBeRecordEnd = true;
-                        reader.read();
-                        if(reader.first == -1) reader.read();
-                        break;
-                    }
+                    return;
+                } else if(peek() == '\n') {
+                    nextWillBeRecordEnd = true;
+                    pos++;
+                    return;
                 }
-                if(store) buff.append((char)c);
-                c = reader.read();
+                // single '\r' is part of the field
+                if(store) fieldEnd = pos;
             }
-            if(c == -1) nextWillBeRecordEnd = true;
         }
 
         public static enum Token {
             FIELD, RECORD_END;
         }
+
+        // access to buffer, ByteScanner overrides it for byte buffer, so 
+        // both scanners share the same parsing
+
+        int capacity() { return buf.length; }
+
+        void grow() { buf = Arrays.copyOf(buf, buf.length * 2); }
+
+        int input() throws IOException { return reader.read(buf, limit, buf.length - limit); }
+
+        void move(int from, int to, int length) { System.arraycopy(buf, from, buf, to, length); }
+
+        void set(int index, int c) { buf[index] = (char)c; }
+
+        /**
+         * Skips character after lone '\r'.
+         */
+        void skipChar() { read(); }
+
+        char charAt(int index) { return buf[index]; }
+
+        String string(int from, int to) { return new String(buf, from, to - from); }
+
+        CharSequence view(Chars view, int from, int to) {
+            view.from = from;
+            view.to = to;
+            return view;
+        }
+
+        long longValue(int from, int to) {
+            int i = from;
+            boolean negative = false;
+            if((i < to) && ((charAt(i) == '-') || (charAt(i) == '+'))) {
+                negative = charAt(i) == '-';
+                i++;
+            }
+            if(i == to) throw new NumberFormatException("Not a number '" + string(from, to) + "'");
+            long rv = 0;
+            for(; i < to; i++) {
+                int digit = charAt(i) - '0';
+                if((digit < 0) || (digit > 9)) throw new NumberFormatException("Not a number '" + string(from, to) + "'");
+                if(rv < (Long.MIN_VALUE + digit) / 10) throw new NumberFormatException("Number out of range '" + string(from, to) + "'");
+                // negative accumulation covers Long.MIN_VALUE
+                rv = rv * 10 - digit;
+            }
+            if(negative) return rv;
+            if(rv == Long.MIN_VALUE) throw new NumberFormatException("Number out of range '" + string(from, to) + "'");
+            return -rv;
+        }
+
+        int intValue(int from, int to) {
+            long rv = longValue(from, to);
+            if((rv < Integer.MIN_VALUE) || (rv > Integer.MAX_VALUE)) throw new NumberFormatException("Number out of range '" + string(from, to) + "'");
+            return (int)rv;
+        }
+
+        BigDecimal decimalValue(int from, int to) {
+            if(from == to) return null;
+            return new BigDecimal(buf, from, to - from);
+        }
+
+        boolean equalsValue(int from, int to, String value) {
+            if(value == null) return false;
+            if(value.length() != to - from) return false;
+            for(int i = from; i < to; i++) {
+                if(charAt(i) != value.charAt(i - from)) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Scanner which reads bytes and decodes only fields which are converted
+     * to strings. It can be used for utf-8 and single byte encodings where 
+     * delimiter, quote and newlines are ascii characters (such bytes can't 
+     * be part of other characters). Csv.scanner(InputStream) uses it 
+     * automatically for such encodings.
+     */
+    public static class ByteScanner extends Scanner {
+        InputStream is;
+        Charset charset;
+        boolean utf8;
+        byte[] bytes;
+        private char[] digits = new char[32];
+        private ByteScanner() {}
+        public static ByteScanner instance(InputStream is, Charset charset, int delimiter, int quote) {
+            return instance(is, charset, delimiter, quote, Scanner.BUFFER_SIZE);
+        }
+        /**
+         * Scanner instance.
+         * @param is source of csv data
+         * @param charset encoding of data
+         * @param delimiter delimiter of fields
+         * @param quote quote character
+         * @param bufferSize initial size of buffer in bytes
+         * @return scanner instance
+         */
+        public static ByteScanner instance(InputStream is, Charset charset, int delimiter, int quote, int bufferSize) {
+            if(is == null) throw new IllegalArgumentException("No input stream");
+            if(!supports(charset, delimiter, quote)) throw new IllegalArgumentException("Encoding " + charset + " is not supported by byte scanner");
+            if(bufferSize < 1) throw new IllegalArgumentException("Bad buffer size " + bufferSize);
+            ByteScanner rv = new ByteScanner();
+            rv.is = is;
+            rv.charset = charset;
+            rv.utf8 = "UTF-8".equals(charset.name());
+            rv.bytes = new byte[bufferSize];
+            rv.delimiter = delimiter;
+            rv.quote = quote;
+            return rv;
+        }
+
+        /**
+         * True if given charset represents delimiter, quote and newlines 
+         * by one byte which is never part of other characters.
+         * @param charset encoding
+         * @param delimiter delimiter of fields
+         * @param quote quote character
+         * @return true if byte scanner can be used
+         */
+        public static boolean supports(Charset charset, int delimiter, int quote) {
+            if(charset == null) return false;
+            if((delimiter > 127) || (quote > 127)) return false;
+            if(!"UTF-8".equals(charset.name())) {
+                if(!charset.canEncode() || (charset.newEncoder().maxBytesPerChar() > 1)) return false;
+            }
+            String special = new String(new char[] {(char)delimiter, (char)quote, '\n', '\r'});
+            return Arrays.equals(special.getBytes(charset), special.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        int capacity() { return bytes.length; }
+
+        @Override
+        void grow() { bytes = Arrays.copyOf(bytes, bytes.length * 2); }
+
+        @Override
+        int input() throws IOException { return is.read(bytes, limit, bytes.length - limit); }
+
+        @Override
+        void move(int from, int to, int length) { System.arraycopy(bytes, from, bytes, to, length); }
+
+        @Override
+        void set(int index, int c) { bytes[index] = (byte)c; }
+
+        @Override
+        void skipChar() {
+            // same as char scanner, which skips whole next character
+            int c = read();
+            if(utf8 && (c >= 0xc0)) {
+                while((peek() & 0xc0) == 0x80) pos++;
+            }
+        }
+
+        private boolean ascii(int from, int to) {
+            for(int i = from; i < to; i++) {
+                if(bytes[i] < 0) return false;
+            }
+            return true;
+        }
+
+        @Override
+        char charAt(int index) { return (char)(bytes[index] & 0xff); }
+
+        @Override
+        String string(int from, int to) { return new String(bytes, from, to - from, charset); }
+
+        @Override
+        CharSequence view(Chars view, int from, int to) {
+            if(!ascii(from, to)) return string(from, to);
+            return super.view(view, from, to);
+        }
+
+        @Override
+        BigDecimal decimalValue(int from, int to) {
+            if(from == to) return null;
+            int length = to - from;
+            if(!ascii(from, to)) return new BigDecimal(string(from, to));
+            if(digits.length < length) digits = new char[length];
+            for(int i = 0; i < length; i++) digits[i] = (char)bytes[from + i];
+            return new BigDecimal(digits, 0, length);
+        }
+
+        @Override
+        boolean equalsValue(int from, int to, String value) {
+            if(value == null) return false;
+            if(!ascii(from, to)) return string(from, to).equals(value);
+            return super.equalsValue(from, to, value);
+        }
+    }
+
+    /**
+     * Reusable view over part of scanner buffer.
+     */
+    private static class Chars implements CharSequence {
+        private final Scanner scanner;
+        private int from;
+        private int to;
+        private Chars(Scanner scanner) { this.scanner = scanner; }
+        public int length() { return to - from; }
+        public char charAt(int index) {
+            if((index < 0) || (index >= to - from)) throw new IndexOutOfBoundsException("Index " + index + " length " + (to - from));
+            return scanner.charAt(from + index);
+        }
+        public CharSequence subSequence(int start, int end) {
+            if((start < 0) || (end > to - from) || (start > end)) throw new IndexOutOfBoundsException("Range " + start + "-" + end + " length " + (to - from));
+            return scanner.string(from + start, from + end);
+        }
+        public String toString() { return scanner.string(from, to); }
+    }
+
+    /**
+     * Reusable record filled by Scanner.next(Row). Fields are not copied
+     * from scanner buffer, so row is valid only until next read. It is
+     * faster alternative of Record for big files.
+     */
+    public static class Row {
+        private Scanner scanner;
+        private int row = 0;
+        private long offset = 0;
+        private int size = 0;
+        private int[] offsets = new int[32];
+        private int[] selected = new int[32];
+        private Chars chars = null;
+
+        public static Row instance() { return new Row(); }
+
+        private void reset(Scanner scanner) {
+            if(this.scanner != scanner) chars = new Chars(scanner);
+            this.scanner = scanner;
+            this.size = 0;
+        }
+
+        private void add(int from, int to) {
+            if(size * 2 == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            offsets[size * 2] = from;
+            offsets[size * 2 + 1] = to;
+            size++;
+        }
+
+        /**
+         * Keeps only given fields in given order. Missing fields are empty.
+         */
+        private void select(int[] columns) {
+            if(selected.length < columns.length * 2) selected = new int[Math.max(32, columns.length * 2)];
+            for(int i = 0; i < columns.length; i++) {
+                int column = columns[i];
+                if(column < size) {
+                    selected[i * 2] = offsets[column * 2];
+                    selected[i * 2 + 1] = offsets[column * 2 + 1];
+                } else {
+                    selected[i * 2] = 0;
+                    selected[i * 2 + 1] = 0;
+                }
+            }
+            int[] tmp = offsets;
+            offsets = selected;
+            selected = tmp;
+            size = columns.length;
+        }
+
+        private int from(int index) { return scanner.keep + offsets[index * 2]; }
+        private int to(int index) { return scanner.keep + offsets[index * 2 + 1]; }
+
+        public int row() { return row; }
+        /**
+         * Offset of row start from beginning of data (see Scanner.offset()).
+         * @return offset
+         */
+        public long offset() { return offset; }
+        public int size() { return size; }
+
+        /**
+         * Field as string.
+         * @param index index of field
+         * @return value of field, "" for index bigger than size
+         */
+        public String field(int index) {
+            if(index < 0) return null;
+            if(index >= size) return "";
+            return scanner.string(from(index), to(index));
+        }
+
+        /**
+         * Field as view over scanner buffer. View is shared by all
+         * fields of row and it is valid only until next call of this method.
+         * @param index index of field
+         * @return value of field
+         */
+        public CharSequence chars(int index) {
+            if((index < 0) || (index >= size)) return "";
+            return scanner.view(chars, from(index), to(index));
+        }
+
+        public int asInt(int index) { checkIndex(index); return scanner.intValue(from(index), to(index)); }
+        public long asLong(int index) { checkIndex(index); return scanner.longValue(from(index), to(index)); }
+        public BigDecimal asDecimal(int index) {
+            if((index < 0) || (index >= size)) return null;
+            return scanner.decimalValue(from(index), to(index));
+        }
+        public boolean equals(int index, String value) {
+            if((index < 0) || (index >= size)) return "".equals(value);
+            return scanner.equalsValue(from(index), to(index), value);
+        }
+
+        private void checkIndex(int index) {
+            if((index < 0) || (index >= size)) throw new NumberFormatException("No field " + index);
+        }
+
+        /**
+         * Copy of row as Record.
+         * @return new record instance
+         */
+        public Record toRecord() {
+            Record rv = Record.instance(row);
+            for(int i = 0; i < size; i++) rv.field(field(i));
+            return rv;
+        }
+
+        @Override
+        public String toString() {
+            return toRecord().toString();
+        }
     }
 
     /**
@@ -305,10 +966,41 @@ public class Csv {
      */
     public static class Record {
         private int row = 0;
+        private long offset = -1;
+        private long end = -1;
         private List<String> fields = new ArrayList<>();
+        private Header header = null;
         public Record(int row) { this.row = row;}
         public static Record instance(int row) { return new Record(row); }
         public int row() { return row; }
+        Record row(int row) { this.row = row; return this; }
+        /**
+         * Offset of record start in data. It is byte offset for utf-8 and
+         * single byte encodings of input stream and char offset otherwise.
+         * @return offset or -1 if record was not read from data
+         */
+        public long offset() { return offset; }
+        /**
+         * Offset after end of record. Reading can be resumed from this offset 
+         * with row() + 1 as next row number (see Csv.stream(Path, long, int)).
+         * @return offset or -1 if record was not read from data
+         */
+        public long end() { return end; }
+        /**
+         * Header of csv (see Csv.withHeader()).
+         * @return header or null if csv has no header
+         */
+        public Header header() { return header; }
+        Record header(Header header) { this.header = header; return this; }
+        /**
+         * Field by column name from header.
+         * @param name name of column
+         * @return value of field
+         */
+        public String column(String name) {
+            if(header == null) throw new IllegalStateException("Record has no header");
+            return field(header.index(name));
+        }
         public int size() { return fields.size(); }
         public String field(int index) {
             if(index < 0) return null;
@@ -336,27 +1028,194 @@ public class Csv {
 
     }
 
-    private static class IteratorImpl implements java.util.Iterator<Record> {
+    /**
+     * Reads records from scanner. Header is read (if it is used), selected
+     * columns are resolved and rows are filtered before records are created.
+     */
+    static class Records {
+        private final Scanner scanner;
+        private final Row row = Row.instance();
+        private final Predicate<Row> filter;
+        private Header header = null;
+        private int[] columns = null;
 
-        private Scanner scanner;
-        private Record nextone;
-        int row = 0;
+        /**
+         * @param csv configuration
+         * @param scanner source of data
+         * @param withHeader true if first record is header
+         * @param header header used instead of header record (which is
+         * skipped), so parallel chunks share one header instance
+         */
+        Records(Csv csv, Scanner scanner, boolean withHeader, Header header) {
+            this.scanner = scanner;
+            this.filter = csv.filter;
+            if(withHeader && scanner.next(row) && (header == null)) header = Header.instance(row.toRecord());
+            this.header = header;
+            if(csv.columnNames != null) {
+                if(header == null) throw new IllegalArgumentException("Columns selected by name require header");
+                columns = new int[csv.columnNames.length];
+                for(int i = 0; i < columns.length; i++) columns[i] = header.index(csv.columnNames[i]);
+            } else if(csv.columns != null) {
+                columns = csv.columns;
+            }
+            if((columns != null) && (header != null)) this.header = header.select(columns);
+        }
+
+        /**
+         * Header of records.
+         * @return header or null
+         */
+        Header header() { return header; }
 
-        private IteratorImpl(Scanner scanner) {
+        /**
+         * Number of rows read from scanner including header and rows
+         * rejected by filter.
+         */
+        int rows() { return scanner.records; }
+
+        /**
+         * Next record.
+         * @return record or null at the end of data
+         */
+        Record next() {
+            while(scanner.next(row)) {
+                if(columns != null) row.select(columns);
+                if((filter != null) && !filter.test(row)) continue;
+                Record record = Record.instance(row.row());
+                record.offset = row.offset();
+                record.end = scanner.offset();
+                record.header = header;
+                int size = row.size();
+                for(int i = 0; i < size; i++) record.field(row.field(i));
+                return record;
+            }
+            return null;
+        }
+    }
+
+    private static class SpliteratorImpl implements Spliterator<Record> {
+
+        private final Csv csv;
+        private final Scanner scanner;
+        private final Closeable closeable;
+        private final boolean withHeader;
+        private final Header names;
+        private Records records = null;
+        private boolean closed = false;
+
+        private SpliteratorImpl(Csv csv, Scanner scanner, Closeable closeable, boolean withHeader, Header names) {
+            this.csv = csv;
             this.scanner = scanner;
-            nextone = nextRecord();
+            this.closeable = closeable;
+            this.withHeader = withHeader;
+            this.names = names;
         }
 
-        private Record nextRecord() {
-            Scanner.Token token = scanner.next();
-            while(token == Scanner.Token.RECORD_END) token = scanner.next();
-            if(token == null) return null;
-            Record record = Record.instance(row++);
-            while(token == Scanner.Token.FIELD) {
-                record.field(scanner.current());
-                token = scanner.next();
+        @Override
+        public boolean tryAdvance(Consumer<? super Record> action) {
+            if(closed) return false;
+            // header is read lazily with first record
+            if(records == null) records = new Records(csv, scanner, withHeader, names);
+            Record record = records.next();
+            if(record == null) {
+                close();
+                return false;
             }
-            return record;
+            action.accept(record);
+            return true;
+        }
+
+        @Override
+        public Spliterator<Record> trySplit() { return null; }
+
+        @Override
+        public long estimateSize() { return closed ? 0 : Long.MAX_VALUE; }
+
+        @Override
+        public int characteristics() { return Spliterator.ORDERED | Spliterator.NONNULL; }
+
+        private void close() {
+            if(closed) return;
+            closed = true;
+            try {
+                closeable.close();
+            } catch(Exception e) {
+                throw AsRuntimeEx.state(e);
+            }
+        }
+    }
+
+    /**
+     * Column names of csv. Names are resolved to indexes once, so it can be 
+     * shared by all records.
+     */
+    public static class Header {
+        private final List<String> names;
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private Header(List<String> names) {
+            this.names = Collections.unmodifiableList(new ArrayList<String>(names));
+            for(int i = 0; i < names.size(); i++) {
+                if(!indexes.containsKey(names.get(i))) indexes.put(names.get(i), i);
+            }
+        }
+        public static Header instance(Record record) {
+            if(record == null) throw new IllegalArgumentException("No header record");
+            return new Header(record.fields());
+        }
+        public static Header instance(List<String> names) {
+            if(names == null) throw new IllegalArgumentException("No header names");
+            return new Header(names);
+        }
+
+        private volatile Selection selection = null;
+
+        /**
+         * Header of selected columns. Last selection is reused, so records 
+         * with the same columns share one header.
+         */
+        Header select(int[] columns) {
+            Selection last = selection;
+            if((last != null) && Arrays.equals(last.columns, columns)) return last.header;
+            List<String> selected = new ArrayList<String>(columns.length);
+            for(int column : columns) selected.add(column < names.size() ? names.get(column) : "");
+            Header rv = new Header(selected);
+            selection = new Selection(columns.clone(), rv);
+            return rv;
+        }
+
+        private static class Selection {
+            private final int[] columns;
+            private final Header header;
+            private Selection(int[] columns, Header header) {
+                this.columns = columns;
+                this.header = header;
+            }
+        }
+        public List<String> names() { return names; }
+        public int size() { return names.size(); }
+        public boolean contains(String name) { return indexes.containsKey(name); }
+        /**
+         * Index of column.
+         * @param name name of column
+         * @return index of first column with given name
+         */
+        public int index(String name) {
+            Integer rv = indexes.get(name);
+            if(rv == null) throw new IllegalArgumentException("Unknown column '" + name + "'");
+            return rv;
+        }
+        @Override
+        public String toString() { return names.toString(); }
+    }
+
+    private static class IteratorImpl implements java.util.Iterator<Record> {
+
+        private Records records;
+        private Record nextone;
+
+        private IteratorImpl(Records records) {
+            this.records = records;
+            nextone = records.next();
         }
 
         @Override
@@ -368,7 +1227,7 @@ public class Csv {
         public Record next() {
             if(nextone == null) return null;
             Record rv = nextone;
-            nextone = nextRecord();
+            nextone = records.next();
             return rv;
         }
 
@@ -376,6 +1235,12 @@ public class Csv {
 
     /**
      * Helper api for building csv data.
+     *
+     * Fields are quoted and escaped in one pass directly into reusable
+     * char[] buffer. By default each field is written to appendable 
+     * immediately. Buffered appender (created with buffer size or by 
+     * Csv.appender(OutputStream), which owns its writer) writes output in 
+     * big blocks, so it must be finished by flush() or close().
      */
     public static class Appender {
         int delimiter = ',';
@@ -384,31 +1249,108 @@ public class Csv {
         String nlreplacer = null;
         Appendable appendable;
         private boolean firstInRow = true;
+        private boolean buffered = false;
+        private char[] buffer;
+        private int size = 0;
+        private boolean quoted = false;
+        private final StringBuilder number = new StringBuilder(32);
         private Appender() {}
+        /**
+         * Appender instance which writes each field to appendable immediately.
+         * @param appendable destination of csv data
+         * @param delimiter delimiter of fields
+         * @param quote quote character
+         * @param forceQuotes true if all fields must be quoted
+         * @param nlreplacer replacement of newlines in fields (null if newlines are kept)
+         * @return appender instance
+         */
         public static Appender instance(Appendable appendable, int delimiter, int quote, boolean forceQuotes, String nlreplacer) {
+            return instance(appendable, delimiter, quote, forceQuotes, nlreplacer, 256, false);
+        }
+        /**
+         * Appender instance which buffers output. Buffer is written when it 
+         * is full and by flush() or close(), so one of them must be called.
+         * @param appendable destination of csv data
+         * @param delimiter delimiter of fields
+         * @param quote quote character
+         * @param forceQuotes true if all fields must be quoted
+         * @param nlreplacer replacement of newlines in fields (null if newlines are kept)
+         * @param bufferSize initial size of buffer in chars
+         * @return appender instance
+         */
+        public static Appender instance(Appendable appendable, int delimiter, int quote, boolean forceQuotes, String nlreplacer, int bufferSize) {
+            return instance(appendable, delimiter, quote, forceQuotes, nlreplacer, bufferSize, true);
+        }
+
+        private static Appender instance(Appendable appendable, int delimiter, int quote, boolean forceQuotes, String nlreplacer, int bufferSize, boolean buffered) {
+            if(appendable == null) throw new IllegalArgumentException("No appendable");
+            if(bufferSize < 1) throw new IllegalArgumentException("Bad buffer size " + bufferSize);
             Appender rv = new Appender();
             rv.appendable = appendable;
             rv.delimiter = delimiter;
             rv.quote = quote;
             rv.forceQuotes = forceQuotes;
             rv.nlreplacer = nlreplacer;
+            rv.buffer = new char[bufferSize];
+            rv.buffered = buffered;
             return rv;
         }
 
-        private static String escape(String value) {
-            value = value.replace("\"", "\"\"");
-            return value;
+        private void ensure(int length) throws IOException {
+            if(size + length <= buffer.length) return;
+            write();
+            if(length > buffer.length) buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+
+        private void write() throws IOException {
+            if(size == 0) return;
+            if(appendable instanceof Writer) ((Writer)appendable).write(buffer, 0, size);
+            else if(appendable instanceof StringBuilder) ((StringBuilder)appendable).append(buffer, 0, size);
+            else appendable.append(CharBuffer.wrap(buffer, 0, size));
+            size = 0;
+        }
+
+        private int put(char c, int pos) {
+            if(c == quote) {
+                quoted = true;
+                buffer[pos++] = c;
+            } else if((c == delimiter) || (c == '\n')) {
+                quoted = true;
+            }
+            buffer[pos++] = c;
+            return pos;
         }
 
-        private boolean shouldBeQuoted(String value) {
-            int len = value.length();
-            for(int i = 0; i < len; i++) {
+        private void value(CharSequence value) throws IOException {
+            int length = value.length();
+            // each char can be doubled quote or replaced newline
+            int replacement = nlreplacer == null ? 1 : Math.max(1, nlreplacer.length());
+            ensure(length * replacement * 2 + 3);
+            int pos = size;
+            if(firstInRow) firstInRow = false;
+            else buffer[pos++] = (char)delimiter;
+            // value is written after opening quote, which is removed if
+            // value is not quoted at the end
+            int start = pos;
+            buffer[pos++] = (char)quote;
+            quoted = forceQuotes;
+            for(int i = 0; i < length; i++) {
                 char c = value.charAt(i);
-                if(c == delimiter) return true;
-                if(c == quote) return true;
-                if(c == '\n') return true;
+                if((nlreplacer != null) && ((c == '\r') || (c == '\n'))) {
+                    if((c == '\r') && (i + 1 < length) && (value.charAt(i + 1) == '\n')) i++;
+                    for(int j = 0; j < nlreplacer.length(); j++) pos = put(nlreplacer.charAt(j), pos);
+                } else {
+                    pos = put(c, pos);
+                }
             }
-            return false;
+            if(quoted) {
+                buffer[pos++] = (char)quote;
+            } else {
+                System.arraycopy(buffer, start + 1, buffer, start, pos - start - 1);
+                pos--;
+            }
+            size = pos;
+            if(!buffered) write();
         }
 
         /**
@@ -432,21 +1374,49 @@ public class Csv {
          */
         public Appender field(String value) {
             try {
-                if(value == null) value = "";
-                if(firstInRow) firstInRow = false;
-                else appendable.append((char)delimiter);
-                if(nlreplacer != null) {
-                    value = value.replace("\r\n", nlreplacer);
-                    value = value.replace("\r", nlreplacer);
-                    value = value.replace("\n", nlreplacer);
-                }
-                if(forceQuotes || shouldBeQuoted(value)) {
-                    appendable.append((char)quote);
-                    appendable.append(escape(value));
-                    appendable.append((char)quote);
-                } else {
-                    appendable.append(value);
-                }
+                value(value == null ? "" : value);
+                return this;
+            } catch(Exception e) {
+                throw AsRuntimeEx.argument(e);
+            }
+        }
+
+        /**
+         * Add one numeric field.
+         * @param value
+         * @return this
+         */
+        public Appender field(int value) {
+            number.setLength(0);
+            number.append(value);
+            return number();
+        }
+
+        /**
+         * Add one numeric field.
+         * @param value
+         * @return this
+         */
+        public Appender field(long value) {
+            number.setLength(0);
+            number.append(value);
+            return number();
+        }
+
+        /**
+         * Add one numeric field.
+         * @param value
+         * @return this
+         */
+        public Appender field(double value) {
+            number.setLength(0);
+            number.append(value);
+            return number();
+        }
+
+        private Appender number() {
+            try {
+                value(number);
                 return this;
             } catch(Exception e) {
                 throw AsRuntimeEx.argument(e);
@@ -459,8 +1429,10 @@ public class Csv {
          */
         public Appender recordEnd() {
             try {
-                appendable.append('\n');
+                ensure(1);
+                buffer[size++] = '\n';
                 firstInRow = true;
+                if(!buffered) write();
                 return this;
             } catch(Exception e) {
                 throw AsRuntimeEx.argument(e);
@@ -469,6 +1441,7 @@ public class Csv {
 
         public Appender flush() {
             try {
+                write();
                 if(appendable instanceof Flushable) ((Flushable)appendable).flush();
                 return this;
             } catch(Exception e) {
@@ -478,6 +1451,7 @@ public class Csv {
 
         public Appender close() {
             try {
+                write();
                 if(appendable instanceof Closeable) ((Closeable)appendable).close();
                 return this;
             } catch(Exception e) {
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Copies csv records from source to appender with optional transformation.
+ * Reading, transformation and appending run in separate threads, so
+ * reading and writing of data overlap with user code.
+ *
+ * Reader thread reads batches of records and submits them to transformation
+ * threads. Futures of batches are put into bounded queue, which is consumed
+ * in order by calling thread, which appends records. So output has same
+ * order as input and reader is blocked if writing is slow.
+ *
+ * <pre>
+ *  long count = CsvPipeline.instance()
+ *      .source(Csv.instance().withHeader().iterator(is))
+ *      .transform(record -&gt; convert(record))
+ *      .target(Csv.instance().appender(os))
+ *      .threads(2)
+ *      .run();
+ * </pre>
+ *
+ * @author antons
+ */
+public class CsvPipeline {
+
+    private Iterator<Csv.Record> source;
+    private Function<? super Csv.Record, ? extends Csv.Record> transform;
+    private Csv.Appender target;
+    private int threads = 1;
+    private int batchSize = 1000;
+    private int queueSize = 16;
+
+    public static CsvPipeline instance() { return new CsvPipeline(); }
+
+    /**
+     * Source of records (Csv.iterator() or Csv.stream().iterator()).
+     * @param source record iterator
+     * @return this
+     */
+    public CsvPipeline source(Iterator<Csv.Record> source) { this.source = source; return this; }
+    /**
+     * Transformation of records. Records for which transformation returns
+     * null are not appended. It is called from more threads if threads()
+     * is bigger than one.
+     * @param transform record transformation
+     * @return this
+     */
+    public CsvPipeline transform(Function<? super Csv.Record, ? extends Csv.Record> transform) { this.transform = transform; return this; }
+    /**
+     * Destination of records. Appender is flushed at the end, but it is not
+     * closed.
+     * @param target appender
+     * @return this
+     */
+    public CsvPipeline target(Csv.Appender target) { this.target = target; return this; }
+    /**
+     * Number of transformation threads. Default is 1.
+     * @param threads number of threads
+     * @return this
+     */
+    public CsvPipeline threads(int threads) {
+        if(threads < 1) throw new IllegalArgumentException("Bad number of threads " + threads);
+        this.threads = threads;
+        return this;
+    }
+    /**
+     * Number of records passed between threads at once. Default is 1000.
+     * @param batchSize size of batch
+     * @return this
+     */
+    public CsvPipeline batchSize(int batchSize) {
+        if(batchSize < 1) throw new IllegalArgumentException("Bad batch size " + batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+    /**
+     * Maximal number of batches read ahead of appending. Default is 16.
+     * @param queueSize size of queue
+     * @return this
+     */
+    public CsvPipeline queueSize(int queueSize) {
+        if(queueSize < 1) throw new IllegalArgumentException("Bad queue size " + queueSize);
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * Copies all records from source to target.
+     * @return number of appended records
+     */
+    public long run() {
+        if(source == null) throw new IllegalArgumentException("No source");
+        if(target == null) throw new IllegalArgumentException("No target");
+        final ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        final BlockingQueue<Future<List<Csv.Record>>> queue = new ArrayBlockingQueue<Future<List<Csv.Record>>>(queueSize);
+        try {
+            executor.execute(new Runnable() {
+                public void run() { read(executor, queue); }
+            });
+            long count = 0;
+            while(true) {
+                List<Csv.Record> batch = join(queue.take());
+                // null batch is end of data
+                if(batch == null) break;
+                for(Csv.Record record : batch) target.record(record);
+                count += batch.size();
+            }
+            target.flush();
+            return count;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AsRuntimeEx.state(e, "Csv pipeline interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void read(ExecutorService executor, BlockingQueue<Future<List<Csv.Record>>> queue) {
+        try {
+            try {
+                while(source.hasNext()) {
+                    final List<Csv.Record> batch = new ArrayList<Csv.Record>(batchSize);
+                    while((batch.size() < batchSize) && source.hasNext()) batch.add(source.next());
+                    queue.put(executor.submit(new Callable<List<Csv.Record>>() {
+                        public List<Csv.Record> call() throws Exception { return transform(batch); }
+                    }));
+                }
+                queue.put(CompletableFuture.<List<Csv.Record>>completedFuture(null));
+            } catch(InterruptedException e) {
+                // pipeline is closed
+            } catch(Throwable e) {
+                CompletableFuture<List<Csv.Record>> failed = new CompletableFuture<List<Csv.Record>>();
+                failed.completeExceptionally(e);
+                queue.put(failed);
+            }
+        } catch(InterruptedException e) {
+        }
+    }
+
+    private List<Csv.Record> transform(List<Csv.Record> batch) {
+        if(transform == null) return batch;
+        List<Csv.Record> rv = new ArrayList<Csv.Record>(batch.size());
+        for(Csv.Record record : batch) {
+            Csv.Record transformed = transform.apply(record);
+            if(transformed != null) rv.add(transformed);
+        }
+        return rv;
+    }
+
+    private static List<Csv.Record> join(Future<List<Csv.Record>> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch(ExecutionException e) {
+            throw AsRuntimeEx.state(e.getCause(), "Unable to process csv batch");
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+/**
+ * Computes time to live of each cache entry. See MapCache.expiry().
+ *
+ * @author antons
+ */
+public interface Expiry<K, V> {
+
+    /**
+     * Time to live of entry stored by put.
+     * @param key key of entry
+     * @param value value of entry
+     * @return time to live in milliseconds, Long.MAX_VALUE for no expiration
+     * and zero or negative value if entry should not be stored at all.
+     */
+    long expireAfterWrite(K key, V value);
+}
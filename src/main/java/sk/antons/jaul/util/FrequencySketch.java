@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+/**
+ * Count-min sketch with 4-bit counters used to estimate popularity of cache keys.
+ * Each long holds sixteen counters and one long is allocated per cache entry.
+ * After number of increments reaches ten times of capacity all counters are
+ * halved, so old popularity fades out.
+ *
+ * @author antons
+ */
+final class FrequencySketch {
+
+    private static final long[] SEED = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size = 0;
+
+    FrequencySketch(int capacity) {
+        int length = 16;
+        while(length < capacity) length = length << 1;
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = length * 10;
+    }
+
+    /**
+     * Estimated number of occurrences of given key (0 - 15).
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int rv = Integer.MAX_VALUE;
+        for(int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int)((table[index] >>> ((start + i) << 2)) & 0xfL);
+            rv = Math.min(rv, count);
+        }
+        return rv;
+    }
+
+    /**
+     * Increments popularity of given key.
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for(int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            added |= incrementAt(index, start + i);
+        }
+        if(added && (++size >= sampleSize)) reset();
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        for(int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = size >>> 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long rv = (hash + SEED[i]) * SEED[i];
+        rv += rv >>> 32;
+        return ((int)rv) & tableMask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Thread safe MapCache which loads missing values by given loader. If more
+ * threads miss same key at once only one of them calls loader and others
+ * wait for its result.
+ *
+ * With refreshAhead() value is reloaded asynchronously when get is called
+ * shortly before expiration, so frequently used keys are not expired
+ * on caller thread.
+ *
+ * <pre>
+ *  Map&lt;Long, Entity&gt; map = MapCache.instance(Long.class, Entity.class)
+ *      .limit(1000)
+ *      .expiration(1000l*60*5)
+ *      .loader(id -&gt; repository.find(id))
+ *      .refreshAhead(1000l*30);
+ * </pre>
+ *
+ * @author antons
+ */
+public class LoadingMapCache<K, V> implements Map<K, V> {
+
+    private final MapCache<K, V> cache;
+    private final Map<K, V> view;
+    private final Function<? super K, ? extends V> loader;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<K, CompletableFuture<V>>();
+    private volatile long refreshAhead = -1;
+    private volatile Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * Creates loading cache. All access to cache should be done through this
+     * instance.
+     * @param cache underlying cache
+     * @param loader function which loads missing values
+     */
+    public LoadingMapCache(MapCache<K, V> cache, Function<? super K, ? extends V> loader) {
+        if(cache == null) throw new IllegalArgumentException("No cache");
+        if(loader == null) throw new IllegalArgumentException("No loader");
+        this.cache = cache;
+        this.view = cache.synchronize();
+        this.loader = loader;
+    }
+
+    public long refreshAhead() { return refreshAhead; }
+    /**
+     * If get finds value which expires in less than given time, value is
+     * reloaded asynchronously. Caller gets current value.
+     * @param refreshAhead time in milliseconds before expiration
+     * @return this
+     */
+    public LoadingMapCache<K, V> refreshAhead(long refreshAhead) { this.refreshAhead = refreshAhead; return this; }
+    /**
+     * Executor used for asynchronous refresh. Default is common fork join pool.
+     * @param executor executor for refresh
+     * @return this
+     */
+    public LoadingMapCache<K, V> executor(Executor executor) {
+        if(executor == null) throw new IllegalArgumentException("No executor");
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Returns cached value or loads it. Concurrent loads of same key are
+     * done only once.
+     * @param key key
+     * @return value
+     */
+    public V get(Object key) {
+        if(key == null) return null;
+        @SuppressWarnings("unchecked")
+        K k = (K)key;
+        V value;
+        long expiresAt = Long.MAX_VALUE;
+        long ahead = refreshAhead;
+        synchronized(view) {
+            value = cache.get(k);
+            if((value != null) && (ahead > 0)) expiresAt = cache.expiresAt(k);
+        }
+        if(value != null) {
+            if((expiresAt != Long.MAX_VALUE) && (expiresAt - System.currentTimeMillis() < ahead)) refresh(k, value, expiresAt);
+            return value;
+        }
+        return load(k);
+    }
+
+    private V load(K key) {
+        CompletableFuture<V> future = new CompletableFuture<V>();
+        CompletableFuture<V> running = loading.putIfAbsent(key, future);
+        if(running != null) return join(running);
+        try {
+            // value can be loaded by other thread before this one was registered
+            V value;
+            synchronized(view) {
+                value = cache.peek(key);
+            }
+            if(value == null) {
+                value = loadValue(key);
+                if(value != null) view.put(key, value);
+            }
+            future.complete(value);
+            return value;
+        } catch(RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } catch(Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * Reloads value asynchronously. Loaded value is stored only if entry 
+     * is still the same one which triggered refresh, so value removed or 
+     * overwritten during load is not replaced by stale one.
+     */
+    private void refresh(final K key, final V current, final long expiresAt) {
+        final CompletableFuture<V> future = new CompletableFuture<V>();
+        if(loading.putIfAbsent(key, future) != null) return;
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        V value = loadValue(key);
+                        if(value != null) {
+                            synchronized(view) {
+                                if((cache.expiresAt(key) == expiresAt) && (cache.peek(key) == current)) cache.put(key, value);
+                            }
+                        }
+                        future.complete(value);
+                    } catch(Throwable e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        loading.remove(key, future);
+                    }
+                }
+            });
+        } catch(RuntimeException e) {
+            loading.remove(key, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private V loadValue(K key) {
+        StatsCounter stats = cache.statsCounter();
+        if(stats == null) return loader.apply(key);
+        long start = System.nanoTime();
+        try {
+            V value = loader.apply(key);
+            stats.loadSuccess(System.nanoTime() - start);
+            return value;
+        } catch(RuntimeException e) {
+            stats.loadFailure(System.nanoTime() - start);
+            throw e;
+        } catch(Error e) {
+            stats.loadFailure(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch(CompletionException e) {
+            throw AsRuntimeEx.state(e.getCause() == null ? e : e.getCause());
+        }
+    }
+
+    public int size() { return view.size(); }
+    public boolean isEmpty() { return view.isEmpty(); }
+    public boolean containsKey(Object key) { return view.containsKey(key); }
+    public boolean containsValue(Object value) { return view.containsValue(value); }
+    public V put(K key, V value) { return view.put(key, value); }
+    public V remove(Object key) { return view.remove(key); }
+    public void putAll(Map<? extends K, ? extends V> m) { view.putAll(m); }
+    public void clear() { view.clear(); }
+    public Set<K> keySet() { return view.keySet(); }
+    public Collection<V> values() { return view.values(); }
+    public Set<Map.Entry<K, V>> entrySet() { return view.entrySet(); }
+
+}
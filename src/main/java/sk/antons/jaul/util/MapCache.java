@@ -16,18 +16,55 @@
 
 package sk.antons.jaul.util;
 
-import java.util.ArrayList;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.lang.ref.WeakReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Simple Map cache. It imple,ments fully Map integrace so it can me synchronized. 
  * It is possible to set size limit and expiration in milliseconds. 
  * 
+ * By default entries are evicted in insertion order (FIFO). With accessOrder(true)
+ * get also moves entry to the head, so the least recently used entry is evicted.
+ * 
+ * With admission(true) limited cache estimates popularity of keys. New entry 
+ * replaces evicted one only if it is more popular, so one time scans can't 
+ * flush frequently used entries.
+ * 
+ * Instead of (or together with) limit of entries you can use maximumWeight(). 
+ * Entries are then evicted while sum of their weights (computed by weigher, 
+ * approximate size in bytes by default) is bigger than maximum weight.
+ * 
+ * With recordStats(true) cache counts hits, misses, evictions and expirations. 
+ * Use stats() for snapshot or registerMBean() for JMX access.
+ * 
+ * Each entry can have its own time to live given by put(key, value, ttl) or 
+ * computed by expiry(). Otherwise global expiration() is used.
+ * 
+ * Expiration times are held in hierarchical timer wheel. Expired entries are 
+ * removed by put (amortized) or by sweep(), which can be scheduled by sweeper()
+ * to reclaim memory also from entries which are never touched again. Sweeper 
+ * returns synchronized view, which must be used for all access to the cache.
+ * 
+ * Entries are held in own hash table, where each entry is also node of 
+ * eviction list and of timer wheel, so there is only one object per entry. 
+ * Views keySet(), values() and entrySet() are live and skip expired entries. 
+ * They contain only entries on heap (not entries in second tier).
+ * 
  * It is recommended to use only get and put methods to achieve expected results. 
  * 
  * @author antons
@@ -36,16 +73,43 @@ public class MapCache<K, V> implements Map<K, V> {
    
     private int limit = -1;
     private long expiration = -1;
-    private Map<K, Entry<K, V>> cache = null;
+    private boolean accessOrder = false;
+    private Expiry<? super K, ? super V> expiry = null;
+    private long maximumWeight = -1;
+    private Weigher<? super K, ? super V> weigher = null;
+    private long weight = 0;
+    private StatsCounter stats = null;
+    private boolean admission = false;
+    private FrequencySketch sketch = null;
+    private Object lastMiss = null;
+    private OffHeapTier<K, V> tier = null;
+    private TimerWheel<Entry<K, V>> wheel = null;
+    private Sweeper sweeper = null;
+    private Map<K, V> synchronizedView = null;
+    private final Consumer<Entry<K, V>> expired = new Consumer<Entry<K, V>>() {
+        public void accept(Entry<K, V> entry) { 
+            if(stats != null) stats.expiration();
+            remove(entry); 
+        }
+    };
+    private Entry<K, V>[] table = null;
+    private int count = 0;
     private Entry<K, V> head = null;
     private Entry<K, V> tail = null;
     
     public MapCache() {
-        cache = new HashMap<K, Entry<K, V>>();
+        this(16);
     }
     
     public MapCache(int initSize) {
-        cache = new HashMap<K, Entry<K, V>>(initSize);
+        int length = 16;
+        while((length < (1 << 30)) && (length - (length >>> 2) < initSize)) length = length << 1;
+        table = newTable(length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Entry<K, V>[] newTable(int length) {
+        return (Entry<K, V>[])new Entry<?, ?>[length];
     }
 
     public static <KK, VV> MapCache<KK, VV> instance(Class<KK> keyType, Class<VV> valueType) {
@@ -57,39 +121,311 @@ public class MapCache<K, V> implements Map<K, V> {
     }
     
     public int limit() { return limit; }
-    public MapCache<K, V> limit(int limit) { this.limit = limit; return this; }
+    public MapCache<K, V> limit(int limit) { this.limit = limit; this.sketch = null; return this; }
     
     public long expiration() { return expiration; }
     public MapCache<K, V> expiration(long expiration) { this.expiration = expiration; return this; }
     
-    public Map<K, V> synchronize() { return Collections.synchronizedMap(this); }
+    public Expiry<? super K, ? super V> expiry() { return expiry; }
+    /**
+     * Policy which computes time to live for each entry stored by put(key, value).
+     * It overrides global expiration().
+     * @param expiry expiration policy
+     * @return this
+     */
+    public MapCache<K, V> expiry(Expiry<? super K, ? super V> expiry) { this.expiry = expiry; return this; }
+    
+    public long maximumWeight() { return maximumWeight; }
+    /**
+     * Maximal sum of weights of all entries. Value heavier than maximum 
+     * weight is not cached and put removes old value of its key.
+     * @param maximumWeight maximal weight (-1 for no limit)
+     * @return this
+     */
+    public MapCache<K, V> maximumWeight(long maximumWeight) { this.maximumWeight = maximumWeight; this.sketch = null; return this; }
+    
+    public Weigher<? super K, ? super V> weigher() { return weigher; }
+    /**
+     * Weigher used for maximumWeight(). Default is Weigher.approximate().
+     * @param weigher weigher of entries
+     * @return this
+     */
+    public MapCache<K, V> weigher(Weigher<? super K, ? super V> weigher) { this.weigher = weigher; return this; }
+    
+    /**
+     * Current sum of weights of all entries. (Computed only if maximumWeight is set.)
+     * @return weight of cache
+     */
+    public long weight() { return weight; }
+    
+    /**
+     * If true hits, misses, evictions and expirations are counted.
+     * @param recordStats true for counting
+     * @return this
+     */
+    public MapCache<K, V> recordStats(boolean recordStats) { 
+        if(!recordStats) stats = null;
+        else if(stats == null) stats = new StatsCounter();
+        return this; 
+    }
+    
+    /**
+     * Snapshot of statistics.
+     * @return current statistics (empty if statistics are not recorded)
+     */
+    public CacheStats stats() { return stats == null ? CacheStats.empty() : stats.snapshot(); }
+    
+    StatsCounter statsCounter() { return stats; }
+    
+    /**
+     * Registers statistics of this cache as platform MXBean (CacheStatsMXBean).
+     * Statistics recording is switched on.
+     * @param objectName jmx name like 'sk.antons:type=MapCache,name=users'
+     * @return this
+     */
+    public MapCache<K, V> registerMBean(String objectName) {
+        recordStats(true);
+        StatsCounter.register(objectName, this, stats);
+        return this;
+    }
+    
+    /**
+     * Unregisters MXBean registered by registerMBean().
+     * @param objectName jmx name
+     * @return this
+     */
+    public MapCache<K, V> unregisterMBean(String objectName) {
+        StatsCounter.unregister(objectName);
+        return this;
+    }
+    
+    public OffHeapTier<K, V> secondTier() { return tier; }
+    /**
+     * Second tier for evicted entries. Entries evicted by limit or 
+     * maximumWeight are moved to this tier and get moves them back 
+     * when they are found there. Expired and removed entries are not moved.
+     * @param tier second tier (null for none)
+     * @return this
+     */
+    public MapCache<K, V> secondTier(OffHeapTier<K, V> tier) { this.tier = tier; return this; }
+    
+    public boolean accessOrder() { return accessOrder; }
+    /**
+     * If true get moves accessed entry to the head of the list so limit evicts
+     * least recently used entry. Otherwise oldest inserted entry is evicted.
+     * @param accessOrder true for LRU, false for FIFO
+     * @return this
+     */
+    public MapCache<K, V> accessOrder(boolean accessOrder) { this.accessOrder = accessOrder; return this; }
+    
+    public boolean admission() { return admission; }
+    /**
+     * If true new entry is stored into full cache only if it is estimated 
+     * to be more popular than entry which should be evicted. Popularity is 
+     * estimated by small frequency sketch (8 bytes per limit entry). Works 
+     * only together with limit or maximumWeight (sketch is then sized for 
+     * 1024 entries if limit is not defined).
+     * @param admission true for frequency based admission
+     * @return this
+     */
+    public MapCache<K, V> admission(boolean admission) { this.admission = admission; this.sketch = null; return this; }
+    
+    private FrequencySketch sketch() {
+        if(!admission || ((limit < 1) && (maximumWeight < 1))) return null;
+        if(sketch == null) sketch = new FrequencySketch(limit > 0 ? limit : 1024);
+        return sketch;
+    }
+    
+    /**
+     * Synchronized view of this cache. View is created only once and it is 
+     * also used as lock by sweeper.
+     * @return synchronized map
+     */
+    public synchronized Map<K, V> synchronize() { 
+        if(synchronizedView == null) synchronizedView = Collections.synchronizedMap(this);
+        return synchronizedView;
+    }
+    
+    /**
+     * Thread safe view of this cache which loads missing values by given 
+     * loader. Concurrent loads of the same key are executed only once.
+     * @param loader function for loading missing values
+     * @return loading cache
+     */
+    public LoadingMapCache<K, V> loader(Function<? super K, ? extends V> loader) {
+        return new LoadingMapCache<K, V>(this, loader);
+    }
+    
+    private synchronized Object mutex() {
+        return synchronizedView == null ? this : synchronizedView;
+    }
+    
+    /**
+     * Current time in milliseconds used for expiration. Tests override it,
+     * so entries can expire without waiting for ticks of timer wheel.
+     */
+    long now() { return System.currentTimeMillis(); }
+
+    /**
+     * Removes all expired entries. Cost is given by number of expired 
+     * entries and passed wheel buckets.
+     */
+    public void sweep() {
+        if(wheel == null) return;
+        wheel.advance(now(), expired);
+    }
+    
+    /**
+     * Schedules sweep() on given executor. Sweep is executed under lock of 
+     * synchronize() view, so cache must be accessed only through returned 
+     * view since now. Put still removes expired entries by itself. Sweeper 
+     * holds cache only by weak reference.
+     * @param executor executor for sweeping
+     * @param period sweeping period in milliseconds
+     * @return synchronized view of this cache
+     */
+    public Map<K, V> sweeper(ScheduledExecutorService executor, long period) {
+        if(executor == null) throw new IllegalArgumentException("No executor");
+        if(period < 1) throw new IllegalArgumentException("Bad period " + period);
+        Map<K, V> view = synchronize();
+        synchronized(view) {
+            if(sweeper != null) sweeper.cancel();
+            sweeper = new Sweeper(this);
+            sweeper.future = executor.scheduleWithFixedDelay(sweeper, period, period, TimeUnit.MILLISECONDS);
+        }
+        return view;
+    }
+    
+    /**
+     * Schedules sweep() on shared daemon thread.
+     * @param period sweeping period in milliseconds
+     * @return synchronized view of this cache
+     */
+    public Map<K, V> sweeper(long period) {
+        return sweeper(sharedSweeperExecutor(), period);
+    }
+
+    private static ScheduledExecutorService sharedSweeper = null;
+    private static synchronized ScheduledExecutorService sharedSweeperExecutor() {
+        if(sharedSweeper == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "MapCache-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            sharedSweeper = executor;
+        }
+        return sharedSweeper;
+    }
+
+    private static class Sweeper implements Runnable {
+        private final WeakReference<MapCache<?, ?>> cache;
+        private volatile ScheduledFuture<?> future;
+        private Sweeper(MapCache<?, ?> cache) {
+            this.cache = new WeakReference<MapCache<?, ?>>(cache);
+        }
+        public void run() {
+            MapCache<?, ?> mc = cache.get();
+            if(mc == null) {
+                cancel();
+                return;
+            }
+            synchronized(mc.mutex()) {
+                mc.sweep();
+            }
+        }
+        private void cancel() {
+            ScheduledFuture<?> f = future;
+            if(f != null) f.cancel(false);
+        }
+    }
     
     public int size() {
-        return cache.size();
+        if(tier != null) return count + tier.size();
+        return count;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private Entry<K, V> find(Object key) {
+        if(key == null) return null;
+        int hash = hash(key);
+        Entry<K, V> entry = table[hash & (table.length - 1)];
+        while(entry != null) {
+            if((entry.hash == hash) && ((entry.key == key) || entry.key.equals(key))) return entry;
+            entry = entry.hnext;
+        }
+        return null;
+    }
+
+    private void insert(Entry<K, V> entry) {
+        if((count >= table.length - (table.length >>> 2)) && (table.length < (1 << 30))) resize();
+        int index = entry.hash & (table.length - 1);
+        entry.hnext = table[index];
+        table[index] = entry;
+        count++;
+    }
+
+    private void delete(Entry<K, V> entry) {
+        int index = entry.hash & (table.length - 1);
+        Entry<K, V> previous = null;
+        Entry<K, V> e = table[index];
+        while((e != null) && (e != entry)) {
+            previous = e;
+            e = e.hnext;
+        }
+        if(e == null) return;
+        if(previous == null) table[index] = e.hnext;
+        else previous.hnext = e.hnext;
+        e.hnext = null;
+        count--;
+    }
+
+    private void resize() {
+        Entry<K, V>[] old = table;
+        Entry<K, V>[] resized = newTable(old.length << 1);
+        int mask = resized.length - 1;
+        for(int i = 0; i < old.length; i++) {
+            Entry<K, V> entry = old[i];
+            while(entry != null) {
+                Entry<K, V> next = entry.hnext;
+                int index = entry.hash & mask;
+                entry.hnext = resized[index];
+                resized[index] = entry;
+                entry = next;
+            }
+        }
+        table = resized;
     }
 
     public boolean isEmpty() {
-        return cache.isEmpty();
+        return size() == 0;
     }
 
     private Entry<K, V> expire(Entry<K, V> entry) {
         if(entry == null) return null;
-        if(expiration < 1) return entry;
-        long time = System.currentTimeMillis();
-        if(entry.time >= time) return entry; 
-        tail = entry.prev;
-        if(tail == null) head = null;
-        else tail.next = null;
-        while(entry != null) {
-            cache.remove(entry.key);
-            entry = entry.next;
-        }
+        if(entry.time == Long.MAX_VALUE) return entry;
+        if(entry.time >= now()) return entry; 
+        if(stats != null) stats.expiration();
+        remove(entry);
         return null;
     }
     
     private void remove(Entry<K, V> entry) {
         if(entry == null) return ;
-        cache.remove(entry.key);
+        delete(entry);
+        weight -= entry.weight;
+        unlink(entry);
+        if(wheel != null) wheel.deschedule(entry);
+    }
+
+    private void unlink(Entry<K, V> entry) {
         if(entry.prev == null) {
             head = entry.next;
             if(head != null) head.prev = null;
@@ -102,103 +438,356 @@ public class MapCache<K, V> implements Map<K, V> {
         } else {
             entry.next.prev = entry.prev;
         }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private void link(Entry<K, V> entry) {
+        if(tail == null) {
+            tail = entry;
+            head = entry;
+        } else {
+            head.prev = entry;
+            entry.next = head;
+            head = entry;
+        }
     }
 
     public boolean containsKey(Object key) {
         if(key == null) return false;
-        long time = System.currentTimeMillis();
-        Entry<K, V> entry = cache.get(key);
+        Entry<K, V> entry = find(key);
         entry = expire(entry);
+        if((entry == null) && (tier != null)) return tier.containsKey(key);
         return entry != null;
     }
 
     public boolean containsValue(Object value) {
-        long time = System.currentTimeMillis();
-        for(Map.Entry<K, Entry<K, V>> entry : cache.entrySet()) {
-            Entry<K, V> en = entry.getValue();
-            if(en.time < time) continue;
-            if((value == null) && (en.value == null)) return true;
-            if(value.equals(en.value)) return true;
+        for(V v : values()) {
+            if((value == null) ? (v == null) : value.equals(v)) return true;
         }
         return false;
     }
 
-    public V get(Object key) {
-        Entry<K, V> entry = cache.get(key);
-        entry = expire(entry);
+    /**
+     * Time in milliseconds when entry for given key expires.
+     * @param key key
+     * @return expiration time, Long.MAX_VALUE for entries without expiration 
+     * and -1 if there is no such entry
+     */
+    public long expiresAt(Object key) {
+        if(key == null) return -1;
+        Entry<K, V> entry = expire(find(key));
+        if((entry == null) && (tier != null)) return tier.expiresAt(key);
+        if(entry == null) return -1;
+        return entry.time;
+    }
+
+    /**
+     * Value for given key without statistics and reordering.
+     */
+    V peek(Object key) {
+        if(key == null) return null;
+        Entry<K, V> entry = expire(find(key));
+        if((entry == null) && (tier != null)) return tier.get(key);
         if(entry == null) return null;
         return entry.value;
     }
 
+    public V get(Object key) {
+        if(admission && (key != null)) {
+            FrequencySketch sketch = sketch();
+            if(sketch != null) sketch.increment(key);
+        }
+        Entry<K, V> entry = find(key);
+        entry = expire(entry);
+        if(entry != null) {
+            if(accessOrder && (entry != head)) {
+                unlink(entry);
+                link(entry);
+            }
+            if(stats != null) stats.hit();
+            return entry.value;
+        }
+        V value = tier == null ? null : promote(key);
+        if(value == null) {
+            if(admission) lastMiss = key;
+            if(stats != null) stats.miss();
+            return null;
+        }
+        if(stats != null) stats.hit();
+        return value;
+    }
+
     public V put(K key, V value) {
         if(key == null) throw new IllegalArgumentException("Null key is not allowed");
-        Entry<K, V> entry = cache.get(key);
-        if(entry != null) remove(entry);
-        if((limit > 0) && size() >= limit) remove(tail);
-        entry = new Entry();
-        entry.key = key;
-        entry.value = value;
-        if(tail == null) {
-            tail = entry;
-            head = entry;
-        } else {
-            head.prev = entry;
-            entry.next = head;
-            head = entry;
+        if(expiry != null) return put(key, value, expiry.expireAfterWrite(key, value));
+        return put(key, value, expiration < 1 ? Long.MAX_VALUE : expiration);
+    }
+
+    /**
+     * Stores value with own time to live.
+     * @param key key
+     * @param value value
+     * @param ttl time to live in milliseconds, Long.MAX_VALUE for no expiration. 
+     * If ttl is zero or negative value is not stored and old one is removed. 
+     * The same is done for value heavier than maximumWeight, so old value 
+     * of key is never returned after put.
+     * @return value
+     */
+    public V put(K key, V value, long ttl) {
+        if(key == null) throw new IllegalArgumentException("Null key is not allowed");
+        FrequencySketch sketch = sketch();
+        if(sketch != null) {
+            // miss followed by put is one access
+            if(!key.equals(lastMiss)) sketch.increment(key);
+            lastMiss = null;
         }
-        cache.put(key, entry);
+        // old value in tier is only dropped, it is not deserialized
+        if(tier != null) tier.discard(key);
+        store(key, value, ttl, sketch);
+        return value;
+    }
+
+    /**
+     * Moves entry from second tier back to heap. Admission is not used
+     * as entry would be lost otherwise. Value is removed from tier only 
+     * if it was stored on heap (it can be heavier than maximumWeight).
+     */
+    @SuppressWarnings("unchecked")
+    private V promote(Object key) {
+        long time = tier.expiresAt(key);
+        V value = tier.get(key);
+        if(value == null) return null;
+        long ttl = time == Long.MAX_VALUE ? Long.MAX_VALUE : time - now();
+        if(store((K)key, value, ttl, null) != null) tier.discard(key);
         return value;
     }
 
+    private Entry<K, V> store(K key, V value, long ttl, FrequencySketch sketch) {
+        long now = ((ttl != Long.MAX_VALUE) || (wheel != null)) ? now() : 0;
+        long time = ttl >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttl;
+        if(wheel != null) wheel.advance(now, expired);
+        Entry<K, V> entry = find(key);
+        if(ttl < 1) {
+            remove(entry);
+            return null;
+        }
+        // weight and admission are checked before anything is removed and 
+        // key already in cache is not subject of admission
+        boolean resident = entry != null;
+        int w = 0;
+        if(maximumWeight > 0) {
+            Weigher<? super K, ? super V> wr = weigher == null ? Weigher.approximate() : weigher;
+            w = wr.weigh(key, value);
+            if(w > maximumWeight) {
+                // value can't be cached and old one would be stale
+                remove(entry);
+                return null;
+            }
+        }
+        if(!resident) {
+            boolean full = (limit > 0) && (count >= limit);
+            boolean heavy = (maximumWeight > 0) && (weight + w > maximumWeight);
+            if((full || heavy) && (sketch != null) && !admit(sketch, key, tail)) return null;
+            if(full) evict(tail);
+        }
+        if(resident) {
+            // value is replaced in place and entry is linked again later
+            unlink(entry);
+            if(wheel != null) wheel.deschedule(entry);
+            weight -= entry.weight;
+            entry.value = value;
+        } else {
+            entry = new Entry<K, V>(key, hash(key), value);
+        }
+        // entry is not linked, so it is not evicted here
+        if(maximumWeight > 0) {
+            while((tail != null) && (weight + w > maximumWeight)) evict(tail);
+        }
+        entry.time = time;
+        entry.weight = w;
+        weight += w;
+        link(entry);
+        if(time != Long.MAX_VALUE) {
+            if(wheel == null) wheel = new TimerWheel<Entry<K, V>>(now);
+            wheel.schedule(entry);
+        }
+        if(!resident) insert(entry);
+        return entry;
+    }
+
+    private boolean admit(FrequencySketch sketch, K candidate, Entry<K, V> victim) {
+        if(victim == null) return true;
+        if((victim.time != Long.MAX_VALUE) && (victim.time < now())) return true;
+        return sketch.frequency(candidate) > sketch.frequency(victim.key);
+    }
+
+    private void evict(Entry<K, V> entry) {
+        if(entry == null) return;
+        if(stats != null) stats.eviction();
+        remove(entry);
+        if(tier != null) {
+            long now = entry.time == Long.MAX_VALUE ? 0 : now();
+            if(entry.time > now) tier.put(entry.key, entry.value, entry.time);
+        }
+    }
+
     public V remove(Object key) {
         if(key == null) return null;
-        Entry<K, V> entry = cache.get(key);
-        if(entry == null) return null;
+        Entry<K, V> entry = find(key);
+        if(entry == null) return tier == null ? null : tier.remove(key);
         remove(entry);
         return entry.value;
     }
 
     public void putAll(Map<? extends K, ? extends V> m) {
         if(m == null) return ;
-        for(Map.Entry<?, ?> object : m.entrySet()) {
-            put((K)object.getKey(), (V)object.getValue());
+        for(Map.Entry<? extends K, ? extends V> object : m.entrySet()) {
+            put(object.getKey(), object.getValue());
         }
     }
 
     public void clear() {
-        cache.clear();
+        Arrays.fill(table, null);
+        count = 0;
+        if(tier != null) tier.clear();
+        wheel = null;
+        weight = 0;
         head = null;
         tail = null;
     }
 
     public Set<K> keySet() {
-        return cache.keySet();
+        return new AbstractSet<K>() {
+            public Iterator<K> iterator() {
+                final EntryIterator it = new EntryIterator();
+                return new Iterator<K>() {
+                    public boolean hasNext() { return it.hasNext(); }
+                    public K next() { return it.next().key; }
+                    public void remove() { it.remove(); }
+                };
+            }
+            public int size() { return liveCount(); }
+            public boolean contains(Object o) { return expire(find(o)) != null; }
+            public boolean remove(Object o) { 
+                Entry<K, V> entry = find(o);
+                if(entry == null) return false;
+                MapCache.this.remove(entry);
+                return true;
+            }
+            public void clear() { MapCache.this.clear(); }
+        };
     }
 
     public Collection<V> values() {
-        List<V> list = new ArrayList<V>();
-        for(Map.Entry<?, ?> object : cache.entrySet()) {
-            list.add((V)object.getValue());
-        }
-        return list;
+        return new AbstractCollection<V>() {
+            public Iterator<V> iterator() {
+                final EntryIterator it = new EntryIterator();
+                return new Iterator<V>() {
+                    public boolean hasNext() { return it.hasNext(); }
+                    public V next() { return it.next().value; }
+                    public void remove() { it.remove(); }
+                };
+            }
+            public int size() { return liveCount(); }
+            public void clear() { MapCache.this.clear(); }
+        };
     }
 
     public Set<Map.Entry<K, V>> entrySet() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return new AbstractSet<Map.Entry<K, V>>() {
+            public Iterator<Map.Entry<K, V>> iterator() {
+                final EntryIterator it = new EntryIterator();
+                return new Iterator<Map.Entry<K, V>>() {
+                    public boolean hasNext() { return it.hasNext(); }
+                    public Map.Entry<K, V> next() { return it.next(); }
+                    public void remove() { it.remove(); }
+                };
+            }
+            public int size() { return liveCount(); }
+            public void clear() { MapCache.this.clear(); }
+        };
     }
 
-    
-    private class Entry<K, V> {
-        public K key;
-        public V value;
-        public long time = MapCache.this.expiration < 1 ? Long.MAX_VALUE : System.currentTimeMillis() + MapCache.this.expiration;
-        public Entry<K, V> prev;
-        public Entry<K, V> next;
+    /**
+     * Number of not expired entries on heap.
+     */
+    private int liveCount() {
+        if(wheel == null) return count;
+        int rv = 0;
+        EntryIterator it = new EntryIterator();
+        while(it.hasNext()) {
+            it.next();
+            rv++;
+        }
+        return rv;
+    }
+
+    /**
+     * Iterates eviction list from head and skips expired entries.
+     */
+    private class EntryIterator {
+        private final long now = now();
+        private Entry<K, V> next = head;
+        private Entry<K, V> last = null;
+
+        private EntryIterator() { skip(); }
+
+        private void skip() {
+            while((next != null) && (next.time != Long.MAX_VALUE) && (next.time < now)) next = next.next;
+        }
+
+        boolean hasNext() { return next != null; }
+
+        Entry<K, V> next() {
+            if(next == null) throw new NoSuchElementException();
+            last = next;
+            next = next.next;
+            skip();
+            return last;
+        }
+
+        void remove() {
+            if(last == null) throw new IllegalStateException();
+            MapCache.this.remove(last);
+            last = null;
+        }
+    }
+
+    /**
+     * Entry is at the same time node of hash table (hnext), node of 
+     * eviction list (prev, next) and node of timer wheel. 
+     */
+    private static final class Entry<K, V> extends TimerWheel.Node<Entry<K, V>> implements Map.Entry<K, V> {
+        private final K key;
+        private final int hash;
+        private V value;
+        private int weight;
+        private Entry<K, V> hnext;
+        private Entry<K, V> prev;
+        private Entry<K, V> next;
+
+        private Entry(K key, int hash, V value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+
+        public K getKey() { return key; }
+        public V getValue() { return value; }
+        public V setValue(V value) { throw new UnsupportedOperationException("Use put of cache"); }
+        public boolean equals(Object o) {
+            if(!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>)o;
+            return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+        public int hashCode() { return key.hashCode() ^ (value == null ? 0 : value.hashCode()); }
+        public String toString() { return key + "=" + value; }
     }
 
     public String dunp() {
         StringBuilder sb = new StringBuilder();
-        sb.append("\nkeys: ").append(cache.keySet());
+        sb.append("\nkeys: ").append(keySet());
         sb.append("\nhead: ").append((head == null)?"":head.key);
         sb.append("\ntail: ").append((tail == null)?"":tail.key);
         sb.append("\ndesc: ");
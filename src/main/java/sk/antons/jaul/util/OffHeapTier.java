@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Second tier of MapCache which stores serialized values outside of java 
+ * heap. Values are stored in direct ByteBuffer or in memory mapped file, 
+ * only keys and small slot descriptors stay on heap. 
+ * 
+ * Buffer is used as circular log. New values are appended after last 
+ * written one and oldest values are dropped when there is no free space. 
+ * Removed values are only marked as dead and their space is reused when 
+ * write position reaches them. So limit() is size of buffer in bytes.
+ * 
+ * <pre>
+ *  MapCache&lt;String, byte[]&gt; cache = MapCache.instance(String.class, byte[].class)
+ *      .limit(1000)
+ *      .secondTier(OffHeapTier.direct(Serializer.bytes(), 1024*1024*512));
+ * </pre>
+ * 
+ * Tier is not thread safe. It is used under the same lock as MapCache.
+ *
+ * @author antons
+ */
+public class OffHeapTier<K, V> {
+
+    private final Serializer<V> serializer;
+    private final ByteBuffer buffer;
+    private final int limit;
+    private final Map<K, Slot<K>> slots = new HashMap<K, Slot<K>>();
+    private final ArrayDeque<Slot<K>> log = new ArrayDeque<Slot<K>>();
+    private int position = 0;
+    private long bytes = 0;
+
+    /**
+     * Creates tier over given buffer. Whole capacity of buffer is used.
+     * @param serializer serializer of values
+     * @param buffer buffer for values 
+     */
+    public OffHeapTier(Serializer<V> serializer, ByteBuffer buffer) {
+        if(serializer == null) throw new IllegalArgumentException("No serializer");
+        if(buffer == null) throw new IllegalArgumentException("No buffer");
+        this.serializer = serializer;
+        this.buffer = buffer;
+        this.limit = buffer.capacity();
+    }
+
+    /**
+     * Tier stored in direct (off heap) buffer.
+     * @param serializer serializer of values
+     * @param limit size of buffer in bytes
+     * @return new tier
+     */
+    public static <KK, VV> OffHeapTier<KK, VV> direct(Serializer<VV> serializer, int limit) {
+        if(limit < 1) throw new IllegalArgumentException("Bad limit " + limit);
+        return new OffHeapTier<KK, VV>(serializer, ByteBuffer.allocateDirect(limit));
+    }
+
+    /**
+     * Tier stored in memory mapped file. File is used only as swap space 
+     * for this tier, its content is not reused by next instance. Whole 
+     * region is mapped as one buffer, so it is limited to 2GB 
+     * (Integer.MAX_VALUE bytes).
+     * @param serializer serializer of values
+     * @param file file for mapping (created or resized if necessary)
+     * @param limit size of mapped region in bytes (at most Integer.MAX_VALUE)
+     * @return new tier
+     */
+    public static <KK, VV> OffHeapTier<KK, VV> mapped(Serializer<VV> serializer, File file, int limit) {
+        if(file == null) throw new IllegalArgumentException("No file");
+        if(limit < 1) throw new IllegalArgumentException("Bad limit " + limit);
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(limit);
+                ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, limit);
+                return new OffHeapTier<KK, VV>(serializer, buffer);
+            } finally {
+                raf.close();
+            }
+        } catch(Exception e) {
+            throw AsRuntimeEx.argument(e, "Unable to map file {}", file);
+        }
+    }
+
+    /**
+     * Size of buffer in bytes.
+     * @return limit in bytes
+     */
+    public int limit() { return limit; }
+
+    /**
+     * Number of bytes used by live values.
+     * @return used bytes
+     */
+    public long bytes() { return bytes; }
+
+    /**
+     * Number of stored values.
+     * @return number of values
+     */
+    public int size() { return slots.size(); }
+
+    /**
+     * Stores value. Older values are dropped if there is not enough space. 
+     * Values bigger than limit are not stored.
+     * @param key key 
+     * @param value value
+     * @param time expiration time in milliseconds (Long.MAX_VALUE for no expiration)
+     * @return true if value was stored
+     */
+    public boolean put(K key, V value, long time) {
+        if(key == null) throw new IllegalArgumentException("Null key is not allowed");
+        discard(key);
+        if(value == null) return false;
+        byte[] data = serializer.serialize(value);
+        int length = data.length;
+        if(length > limit) return false;
+        allocate(length);
+        ByteBuffer bb = buffer.duplicate();
+        bb.position(position);
+        bb.put(data);
+        Slot<K> slot = new Slot<K>(key, position, length, time);
+        position += length;
+        log.addLast(slot);
+        slots.put(key, slot);
+        bytes += length;
+        return true;
+    }
+
+    /**
+     * Moves write position to place with length free bytes. Values 
+     * in the way are dropped.
+     */
+    private void allocate(int length) {
+        while(!log.isEmpty()) {
+            Slot<K> oldest = log.peekFirst();
+            if(oldest.offset >= position) {
+                if(position + length <= oldest.offset) return;
+                drop(log.pollFirst());
+            } else {
+                if(position + length <= limit) return;
+                // rest of buffer is too short, continue from beginning
+                position = 0;
+            }
+        }
+        if(position + length > limit) position = 0;
+    }
+
+    private void drop(Slot<K> slot) {
+        if(!slot.live) return;
+        slot.live = false;
+        slots.remove(slot.key);
+        bytes -= slot.length;
+    }
+
+    /**
+     * Value for given key. Value stays in tier.
+     * @param key key
+     * @return value or null if there is no such value or it is expired
+     */
+    public V get(Object key) {
+        Slot<K> slot = slot(key);
+        if(slot == null) return null;
+        return read(slot);
+    }
+
+    /**
+     * Removes value for given key.
+     * @param key key
+     * @return removed value or null if there is no such value or it is expired
+     */
+    public V remove(Object key) {
+        Slot<K> slot = slot(key);
+        if(slot == null) return null;
+        V value = read(slot);
+        drop(slot);
+        return value;
+    }
+
+    /**
+     * Removes value for given key without reading it. Only slot of value 
+     * is marked as dead.
+     * @param key key
+     * @return true if value was removed
+     */
+    public boolean discard(Object key) {
+        Slot<K> slot = slot(key);
+        if(slot == null) return false;
+        drop(slot);
+        return true;
+    }
+
+    /**
+     * Expiration time of value.
+     * @param key key
+     * @return expiration time, Long.MAX_VALUE for values without expiration 
+     * and -1 if there is no such value
+     */
+    public long expiresAt(Object key) {
+        Slot<K> slot = slot(key);
+        if(slot == null) return -1;
+        return slot.time;
+    }
+
+    public boolean containsKey(Object key) {
+        return slot(key) != null;
+    }
+
+    public void clear() {
+        slots.clear();
+        log.clear();
+        position = 0;
+        bytes = 0;
+    }
+
+    private Slot<K> slot(Object key) {
+        if(key == null) return null;
+        Slot<K> slot = slots.get(key);
+        if(slot == null) return null;
+        if((slot.time != Long.MAX_VALUE) && (slot.time < System.currentTimeMillis())) {
+            drop(slot);
+            return null;
+        }
+        return slot;
+    }
+
+    private V read(Slot<K> slot) {
+        byte[] data = new byte[slot.length];
+        ByteBuffer bb = buffer.duplicate();
+        bb.position(slot.offset);
+        bb.get(data);
+        return serializer.deserialize(data);
+    }
+
+    private static class Slot<K> {
+        private final K key;
+        private final int offset;
+        private final int length;
+        private final long time;
+        private boolean live = true;
+        private Slot(K key, int offset, int length, long time) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+            this.time = time;
+        }
+    }
+}
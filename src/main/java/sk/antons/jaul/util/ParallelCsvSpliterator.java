@@ -0,0 +1,281 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Source of records of csv file parsed in parallel. File is split into 
+ * chunks of bytes. First pass counts quotes in each chunk (in parallel), 
+ * so it is known if chunk starts inside of quoted field. Each chunk is 
+ * then moved to the first newline outside of quotes and parsed by own 
+ * memory mapped buffer. Parsed chunks are returned in file order and 
+ * rows are renumbered, so Record.row() is the same as in sequential parsing.
+ * 
+ * Only limited number of chunks are parsed ahead of consumer. Split of 
+ * this spliterator returns whole parsed chunk, so records are not copied.
+ *
+ * @author antons
+ */
+class ParallelCsvSpliterator implements Spliterator<Csv.Record>, AutoCloseable {
+
+    private static final int MIN_CHUNK = 64 * 1024;
+    private static final int MAX_CHUNK = 1024 * 1024;
+
+    private final Csv csv;
+    private final FileChannel channel;
+    private final ForkJoinPool pool;
+    private final long size;
+    private final int chunkSize;
+    private final int chunks;
+    private final int ahead;
+    private final byte quote;
+    private boolean[] quoted;
+    private final Path file;
+    private final ArrayDeque<Future<Chunk>> running = new ArrayDeque<Future<Chunk>>();
+    private int submitted = 0;
+    private int rowOffset = 0;
+    private int rows = 0;
+    private List<Csv.Record> current = Collections.emptyList();
+    private int index = 0;
+    private Csv.Header header = null;
+    private boolean closed = false;
+
+    ParallelCsvSpliterator(Csv csv, Charset charset, int delimiter, int quote, Path file, int threads) {
+        if(file == null) throw new IllegalArgumentException("No file");
+        if(threads < 1) throw new IllegalArgumentException("Bad number of threads " + threads);
+        if(!Csv.ByteScanner.supports(charset, delimiter, quote)) {
+            throw new IllegalArgumentException("Parallel parsing is not supported for encoding " + charset.name());
+        }
+        this.csv = csv;
+        this.file = file;
+        this.quote = (byte)quote;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+        } catch(Exception e) {
+            throw AsRuntimeEx.argument(e, "Unable to open {}", file);
+        }
+        long chunk = size / ((long)threads * 16);
+        this.chunkSize = (int)Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, chunk));
+        this.chunks = (int)((size + chunkSize - 1) / chunkSize);
+        this.ahead = threads * 2;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    private void start() {
+        if(quoted != null) return;
+        try {
+            // header is read before parsing, so chunks can resolve
+            // columns selected by name
+            if(csv.header()) header = csv.readHeader(file);
+            List<Future<Long>> counts = new ArrayList<Future<Long>>(chunks);
+            for(int i = 0; i < chunks; i++) {
+                final long from = (long)i * chunkSize;
+                final long to = Math.min(size, from + chunkSize);
+                counts.add(pool.submit(new Callable<Long>() {
+                    public Long call() throws Exception { return countQuotes(from, to); }
+                }));
+            }
+            quoted = new boolean[chunks];
+            long sum = 0;
+            for(int i = 0; i < chunks; i++) {
+                quoted[i] = (sum & 1) == 1;
+                sum += counts.get(i).get();
+            }
+        } catch(Exception e) {
+            close();
+            throw AsRuntimeEx.state(e, "Unable to split csv file");
+        }
+    }
+
+    private long countQuotes(long from, long to) throws Exception {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        long rv = 0;
+        byte q = quote;
+        int limit = buffer.limit();
+        for(int i = 0; i < limit; i++) {
+            if(buffer.get(i) == q) rv++;
+        }
+        return rv;
+    }
+
+    /**
+     * Position after first newline outside of quotes starting from given 
+     * chunk start.
+     */
+    private long boundary(int chunk) throws Exception {
+        if(chunk == 0) return 0;
+        if(chunk >= chunks) return size;
+        long position = (long)chunk * chunkSize;
+        boolean inQuotes = quoted[chunk];
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while(position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if(n < 0) break;
+            for(int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if(b == quote) inQuotes = !inQuotes;
+                else if((b == '\n') && !inQuotes) return position + i + 1;
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    private Chunk parse(int chunk) throws Exception {
+        long from = boundary(chunk);
+        long to = boundary(chunk + 1);
+        if(from >= to) return new Chunk(Collections.<Csv.Record>emptyList(), 0);
+        final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        InputStream is = new InputStream() {
+            public int read() {
+                if(!buffer.hasRemaining()) return -1;
+                return buffer.get() & 0xff;
+            }
+            public int read(byte[] b, int off, int len) {
+                if(!buffer.hasRemaining()) return -1;
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+        };
+        // first chunk starts with header, it is skipped and all chunks 
+        // share header read in start()
+        Csv.Scanner scanner = csv.bytesScanner(is);
+        scanner.consumed = from;
+        Csv.Records records = new Csv.Records(csv, scanner, (chunk == 0) && csv.header(), header);
+        List<Csv.Record> rv = new ArrayList<Csv.Record>();
+        Csv.Record record = records.next();
+        while(record != null) {
+            rv.add(record);
+            record = records.next();
+        }
+        return new Chunk(rv, records.rows());
+    }
+
+    private void submit() {
+        while((submitted < chunks) && (running.size() < ahead)) {
+            final int chunk = submitted++;
+            running.addLast(pool.submit(new Callable<Chunk>() {
+                public Chunk call() throws Exception { return parse(chunk); }
+            }));
+        }
+    }
+
+    /**
+     * Moves to next chunk with at least one record.
+     * @return false if there is no more chunk
+     */
+    private boolean nextChunk() {
+        if(closed) return false;
+        start();
+        while(index >= current.size()) {
+            submit();
+            if(running.isEmpty()) {
+                close();
+                return false;
+            }
+            rowOffset += rows;
+            Chunk chunk = join(running.pollFirst());
+            current = chunk.records;
+            rows = chunk.rows;
+            index = 0;
+            // rows rejected by filter are counted too
+            for(Csv.Record record : current) record.row(rowOffset + record.row());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Csv.Record> action) {
+        if((index >= current.size()) && !nextChunk()) return false;
+        action.accept(current.get(index++));
+        return true;
+    }
+
+    @Override
+    public Spliterator<Csv.Record> trySplit() {
+        if((index >= current.size()) && !nextChunk()) return null;
+        Spliterator<Csv.Record> rv = current.subList(index, current.size()).spliterator();
+        index = current.size();
+        return rv;
+    }
+
+    @Override
+    public long estimateSize() {
+        return closed && (index >= current.size()) ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+
+    private Chunk join(Future<Chunk> future) {
+        try {
+            return future.get();
+        } catch(ExecutionException e) {
+            close();
+            throw AsRuntimeEx.state(e.getCause(), "Unable to parse csv chunk");
+        } catch(Exception e) {
+            close();
+            throw AsRuntimeEx.state(e, "Unable to parse csv chunk");
+        }
+    }
+
+    @Override
+    public void close() {
+        if(closed) return;
+        closed = true;
+        for(Future<?> future : running) future.cancel(true);
+        running.clear();
+        pool.shutdownNow();
+        try {
+            channel.close();
+        } catch(Exception e) {
+        }
+    }
+
+    /**
+     * Parsed records of chunk and number of its rows.
+     */
+    private static class Chunk {
+        private final List<Csv.Record> records;
+        private final int rows;
+        private Chunk(List<Csv.Record> records, int rows) {
+            this.records = records;
+            this.rows = rows;
+        }
+    }
+}
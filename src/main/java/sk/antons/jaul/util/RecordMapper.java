@@ -0,0 +1,390 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import sk.antons.jaul.Is;
+
+/**
+ * Maps csv records to instances of given class. Columns are bound to 
+ * setters (setName(value) or name(value)) or to fields of class. Values 
+ * are converted by FromString, so empty values are converted to defaults 
+ * (0, false or null).
+ * 
+ * Binders are resolved only once (for first record or when header changes) 
+ * and setters are called by precompiled method handles, so mapping of 
+ * records does not use reflection.
+ * 
+ * <pre>
+ *  RecordMapper&lt;Person&gt; mapper = RecordMapper.instance(Person.class)
+ *      .bindAll()
+ *      .bind("birth_date", "born")
+ *      .dateFormat("dd.MM.yyyy");
+ *  List&lt;Person&gt; persons = Csv.instance()
+ *      .withHeader()
+ *      .stream(reader)
+ *      .map(mapper)
+ *      .collect(Collectors.toList());
+ * </pre>
+ *
+ * @author antons
+ */
+public class RecordMapper<T> implements Function<Csv.Record, T> {
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final List<Binding> bindings = new ArrayList<Binding>();
+    private boolean all = false;
+    private String dateFormat = "yyyy-MM-dd";
+    private String dateTimeFormat = "yyyy-MM-dd'T'HH:mm:ss";
+    private volatile Compiled compiled = null;
+
+    public RecordMapper(Class<T> type) {
+        if(type == null) throw new IllegalArgumentException("No type");
+        this.type = type;
+        try {
+            this.constructor = MethodHandles.lookup()
+                .unreflectConstructor(accessible(type.getDeclaredConstructor()))
+                .asType(MethodType.methodType(Object.class));
+        } catch(Exception e) {
+            throw AsRuntimeEx.argument(e, "Class {} has no default constructor", type.getName());
+        }
+    }
+
+    public static <TT> RecordMapper<TT> instance(Class<TT> type) { return new RecordMapper<TT>(type); }
+
+    /**
+     * Binds all columns of header to properties with the same name. Names 
+     * are compared case insensitive and without '_', '-' and spaces, so 
+     * column 'first_name' is bound to property 'firstName'. Columns without 
+     * property are ignored.
+     * @return this
+     */
+    public RecordMapper<T> bindAll() { this.all = true; this.compiled = null; return this; }
+
+    /**
+     * Binds column to property.
+     * @param column name of column in header
+     * @param property name of property
+     * @return this
+     */
+    public RecordMapper<T> bind(String column, String property) {
+        if(Is.empty(column)) throw new IllegalArgumentException("No column");
+        bindings.add(new Binding(column, -1, property(property)));
+        compiled = null;
+        return this;
+    }
+
+    /**
+     * Binds column to property. Can be used also for csv without header.
+     * @param column index of column
+     * @param property name of property
+     * @return this
+     */
+    public RecordMapper<T> bind(int column, String property) {
+        if(column < 0) throw new IllegalArgumentException("Bad column index " + column);
+        bindings.add(new Binding(null, column, property(property)));
+        compiled = null;
+        return this;
+    }
+
+    /**
+     * Format of Date and LocalDate values. Default is 'yyyy-MM-dd'.
+     * @param format date format
+     * @return this
+     */
+    public RecordMapper<T> dateFormat(String format) { this.dateFormat = format; this.compiled = null; return this; }
+
+    /**
+     * Format of LocalDateTime values. Default is 'yyyy-MM-dd'T'HH:mm:ss'.
+     * @param format date time format
+     * @return this
+     */
+    public RecordMapper<T> dateTimeFormat(String format) { this.dateTimeFormat = format; this.compiled = null; return this; }
+
+    private static String property(String property) {
+        if(Is.empty(property)) throw new IllegalArgumentException("No property");
+        return property;
+    }
+
+    /**
+     * Creates new instance from record.
+     * @param record csv record
+     * @return new instance
+     */
+    public T map(Csv.Record record) {
+        if(record == null) return null;
+        Compiled c = compiled;
+        if((c == null) || !c.matches(record.header())) c = compile(record.header());
+        Binder[] bs = c.binders;
+        try {
+            Object rv = constructor.invokeExact();
+            for(Binder binder : bs) {
+                Object value = binder.converter.apply(record.field(binder.index));
+                binder.setter.invokeExact(rv, value);
+            }
+            @SuppressWarnings("unchecked")
+            T t = (T)rv;
+            return t;
+        } catch(RuntimeException e) {
+            throw AsRuntimeEx.wrapArgument(e, "Unable to map row {} - {}", record.row(), e.getMessage());
+        } catch(Throwable e) {
+            throw AsRuntimeEx.state(e, "Unable to map row {}", record.row());
+        }
+    }
+
+    @Override
+    public T apply(Csv.Record record) { return map(record); }
+
+    private synchronized Compiled compile(Csv.Header header) {
+        Compiled c = compiled;
+        if((c != null) && c.matches(header)) return c;
+        List<Binder> list = new ArrayList<Binder>();
+        List<String> bound = new ArrayList<String>();
+        for(Binding binding : bindings) {
+            int index = binding.index;
+            if(binding.column != null) {
+                if(header == null) throw new IllegalStateException("Column '" + binding.column + "' needs header");
+                index = header.index(binding.column);
+            }
+            list.add(binder(index, binding.property, true));
+            bound.add(binding.property);
+        }
+        if(all) {
+            if(header == null) throw new IllegalStateException("bindAll() needs header");
+            List<String> names = header.names();
+            for(int i = 0; i < names.size(); i++) {
+                String property = findProperty(names.get(i));
+                if((property == null) || bound.contains(property)) continue;
+                Binder binder = binder(i, property, false);
+                if(binder != null) list.add(binder);
+            }
+        }
+        c = new Compiled(header, list.toArray(new Binder[list.size()]));
+        this.compiled = c;
+        return c;
+    }
+
+    /**
+     * Binders resolved for header. It is published as one immutable 
+     * instance, so binders are never used with other header.
+     */
+    private static class Compiled {
+        private final Csv.Header header;
+        private final Binder[] binders;
+
+        private Compiled(Csv.Header header, Binder[] binders) {
+            this.header = header;
+            this.binders = binders;
+        }
+
+        /**
+         * Headers are compared by names, so records with other header 
+         * instance (from other parallel chunk) use the same binders.
+         */
+        private boolean matches(Csv.Header other) {
+            if(header == other) return true;
+            if((header == null) || (other == null)) return false;
+            return header.names().equals(other.names());
+        }
+    }
+
+    private static String normalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for(int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if((c == '_') || (c == '-') || (c == ' ')) continue;
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    private String findProperty(String column) {
+        if(column == null) return null;
+        String name = normalize(column);
+        for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for(Field field : c.getDeclaredFields()) {
+                if(normalize(field.getName()).equals(name)) return field.getName();
+            }
+        }
+        for(Method method : type.getMethods()) {
+            if(method.getParameterTypes().length != 1) continue;
+            String mname = method.getName();
+            if(mname.startsWith("set") && normalize(mname.substring(3)).equals(name)) {
+                return Character.toLowerCase(mname.charAt(3)) + mname.substring(4);
+            }
+        }
+        return null;
+    }
+
+    private Binder binder(int index, String property, boolean required) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            String setter = "set" + property.substring(0, 1).toUpperCase(Locale.ROOT) + property.substring(1);
+            Method method = method(setter);
+            if(method == null) method = method(property);
+            if(method != null) {
+                MethodHandle handle = lookup.unreflect(accessible(method));
+                return new Binder(index, handle, converter(method.getParameterTypes()[0]));
+            }
+            Field field = field(property);
+            if(field != null) {
+                MethodHandle handle = lookup.unreflectSetter(accessible(field));
+                return new Binder(index, handle, converter(field.getType()));
+            }
+        } catch(IllegalArgumentException e) {
+            throw e;
+        } catch(Exception e) {
+            throw AsRuntimeEx.argument(e, "Unable to bind property {} of {}", property, type.getName());
+        }
+        if(required) throw new IllegalArgumentException("No property " + property + " in " + type.getName());
+        return null;
+    }
+
+    private Method method(String name) {
+        for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for(Method method : c.getDeclaredMethods()) {
+                if(Modifier.isStatic(method.getModifiers())) continue;
+                if(method.getParameterTypes().length != 1) continue;
+                if(!method.getName().equals(name)) continue;
+                if(converter(method.getParameterTypes()[0]) == null) continue;
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private Field field(String name) {
+        for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for(Field field : c.getDeclaredFields()) {
+                if(Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) continue;
+                if(field.getName().equals(name) && (converter(field.getType()) != null)) return field;
+            }
+        }
+        return null;
+    }
+
+    private static <A extends java.lang.reflect.AccessibleObject> A accessible(A object) {
+        object.setAccessible(true);
+        return object;
+    }
+
+    /**
+     * Converter of string to given type by FromString or null for 
+     * unsupported type.
+     */
+    private Function<String, Object> converter(final Class<?> type) {
+        final String df = dateFormat;
+        if(type == String.class) return new Function<String, Object>() {
+            public Object apply(String value) { return value; }
+        };
+        if(type == int.class) return new Function<String, Object>() {
+            public Object apply(String value) { return new FromString(value).intValue(); }
+        };
+        if(type == Integer.class) return new Function<String, Object>() {
+            public Object apply(String value) { return Is.empty(value) ? null : new FromString(value).intValue(); }
+        };
+        if(type == long.class) return new Function<String, Object>() {
+            public Object apply(String value) { return new FromString(value).longValue(); }
+        };
+        if(type == Long.class) return new Function<String, Object>() {
+            public Object apply(String value) { return Is.empty(value) ? null : new FromString(value).longValue(); }
+        };
+        if(type == double.class) return new Function<String, Object>() {
+            public Object apply(String value) { return new FromString(value).doubleValue(); }
+        };
+        if(type == Double.class) return new Function<String, Object>() {
+            public Object apply(String value) { return Is.empty(value) ? null : new FromString(value).doubleValue(); }
+        };
+        if(type == float.class) return new Function<String, Object>() {
+            public Object apply(String value) { return new FromString(value).floatValue(); }
+        };
+        if(type == Float.class) return new Function<String, Object>() {
+            public Object apply(String value) { return Is.empty(value) ? null : new FromString(value).floatValue(); }
+        };
+        if(type == boolean.class) return new Function<String, Object>() {
+            public Object apply(String value) { return new FromString(value).booleanValue(); }
+        };
+        if(type == Boolean.class) return new Function<String, Object>() {
+            public Object apply(String value) { return Is.empty(value) ? null : new FromString(value).booleanValue(); }
+        };
+        if(type == BigDecimal.class) return new Function<String, Object>() {
+            public Object apply(String value) { return new FromString(value).bd(); }
+        };
+        if(type == Date.class) return new Function<String, Object>() {
+            public Object apply(String value) { return new FromString(value).dateValue(df); }
+        };
+        if(type == LocalDate.class) {
+            final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(dateFormat);
+            return new Function<String, Object>() {
+                public Object apply(String value) { return new FromString(value).localDateValue(null, formatter); }
+            };
+        }
+        if(type == LocalDateTime.class) {
+            final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(dateTimeFormat);
+            return new Function<String, Object>() {
+                public Object apply(String value) { return new FromString(value).localDateTimeValue(null, formatter); }
+            };
+        }
+        if(type.isEnum()) return new Function<String, Object>() {
+            public Object apply(String value) { return Is.empty(value) ? null : enumValue(type, value); }
+        };
+        return null;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(Class<?> type, String value) {
+        return Enum.valueOf((Class<Enum>)type, value);
+    }
+
+    private static class Binding {
+        private final String column;
+        private final int index;
+        private final String property;
+        private Binding(String column, int index, String property) {
+            this.column = column;
+            this.index = index;
+            this.property = property;
+        }
+    }
+
+    private static class Binder {
+        private final int index;
+        private final MethodHandle setter;
+        private final Function<String, Object> converter;
+        private Binder(int index, MethodHandle setter, Function<String, Object> converter) {
+            if(converter == null) throw new IllegalArgumentException("Unsupported type of " + setter);
+            this.index = index;
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            this.converter = converter;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+/**
+ * Converts values to bytes and back. Used by OffHeapTier for storing 
+ * values outside of java heap.
+ *
+ * @author antons
+ */
+public interface Serializer<T> {
+
+    /**
+     * Converts value to bytes.
+     * @param value value (never null)
+     * @return binary form of value
+     */
+    byte[] serialize(T value);
+
+    /**
+     * Converts bytes back to value.
+     * @param data binary form created by serialize
+     * @return value
+     */
+    T deserialize(byte[] data);
+
+    /**
+     * Serializer of byte arrays (copies data only).
+     * @return serializer instance
+     */
+    static Serializer<byte[]> bytes() {
+        return Serializers.BYTES;
+    }
+
+    /**
+     * Serializer of strings in UTF-8.
+     * @return serializer instance
+     */
+    static Serializer<String> string() {
+        return Serializers.STRING;
+    }
+
+    /**
+     * Serializer which uses java serialization. Values must implement 
+     * java.io.Serializable.
+     * @return serializer instance
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Serializer<T> serializable() {
+        return (Serializer<T>)Serializers.SERIALIZABLE;
+    }
+}
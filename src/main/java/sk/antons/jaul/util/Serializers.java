@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Default serializers returned by Serializer static methods.
+ *
+ * @author antons
+ */
+final class Serializers {
+
+    private Serializers() {}
+
+    static final Serializer<byte[]> BYTES = new Serializer<byte[]>() {
+        public byte[] serialize(byte[] value) { return value; }
+        public byte[] deserialize(byte[] data) { return data; }
+    };
+
+    static final Serializer<String> STRING = new Serializer<String>() {
+        public byte[] serialize(String value) { return value.getBytes(StandardCharsets.UTF_8); }
+        public String deserialize(byte[] data) { return new String(data, StandardCharsets.UTF_8); }
+    };
+
+    static final Serializer<Object> SERIALIZABLE = new Serializer<Object>() {
+        public byte[] serialize(Object value) {
+            try {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                ObjectOutputStream os = new ObjectOutputStream(bos);
+                os.writeObject(value);
+                os.close();
+                return bos.toByteArray();
+            } catch(Exception e) {
+                throw AsRuntimeEx.argument(e, "Unable to serialize {}", value.getClass().getName());
+            }
+        }
+        public Object deserialize(byte[] data) {
+            try {
+                ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(data));
+                return is.readObject();
+            } catch(Exception e) {
+                throw AsRuntimeEx.state(e, "Unable to deserialize value");
+            }
+        }
+    };
+}
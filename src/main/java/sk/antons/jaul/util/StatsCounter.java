@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Cache statistics counters. Counters are LongAdders, so recording from many
+ * threads does not contend.
+ *
+ * @author antons
+ */
+final class StatsCounter {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+
+    void hit() { hitCount.increment(); }
+    void miss() { missCount.increment(); }
+    void eviction() { evictionCount.increment(); }
+    void expiration() { expirationCount.increment(); }
+    void loadSuccess(long time) { loadSuccessCount.increment(); totalLoadTime.add(time); }
+    void loadFailure(long time) { loadFailureCount.increment(); totalLoadTime.add(time); }
+
+    CacheStats snapshot() {
+        return new CacheStats(hitCount.sum(), missCount.sum()
+            , evictionCount.sum(), expirationCount.sum()
+            , loadSuccessCount.sum(), loadFailureCount.sum(), totalLoadTime.sum());
+    }
+
+    /**
+     * Registers statistics of given cache as platform MXBean.
+     */
+    static void register(String name, final Map<?, ?> cache, final StatsCounter counter) {
+        try {
+            CacheStatsMXBean bean = new CacheStatsMXBean() {
+                public long getHitCount() { return counter.hitCount.sum(); }
+                public long getMissCount() { return counter.missCount.sum(); }
+                public double getHitRate() { return counter.snapshot().hitRate(); }
+                public long getEvictionCount() { return counter.evictionCount.sum(); }
+                public long getExpirationCount() { return counter.expirationCount.sum(); }
+                public long getLoadSuccessCount() { return counter.loadSuccessCount.sum(); }
+                public long getLoadFailureCount() { return counter.loadFailureCount.sum(); }
+                public double getAverageLoadPenalty() { return counter.snapshot().averageLoadPenalty(); }
+                public int getSize() { return cache.size(); }
+            };
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(bean, CacheStatsMXBean.class, true), new ObjectName(name));
+        } catch(Exception e) {
+            throw AsRuntimeEx.argument(e, "Unable to register mbean " + name);
+        }
+    }
+
+    /**
+     * Unregisters MXBean registered by register().
+     */
+    static void unregister(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName oname = new ObjectName(name);
+            if(server.isRegistered(oname)) server.unregisterMBean(oname);
+        } catch(Exception e) {
+            throw AsRuntimeEx.argument(e, "Unable to unregister mbean " + name);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timer wheel used for expiration of cache entries. There are
+ * five levels with 64 buckets each. Buckets of first level are 1.024s long,
+ * next levels cover approximately 65s, 70m, 74h and 198d. Scheduling and
+ * removal of node is O(1). Advancing the wheel visits only passed buckets
+ * and nodes, which are not yet expired, are moved to lower levels.
+ *
+ * Wheel has resolution of one bucket of first level. Entries are expired
+ * one bucket later at most.
+ *
+ * @author antons
+ */
+final class TimerWheel<N extends TimerWheel.Node<N>> {
+
+    private static final int[] SHIFT = { 10, 16, 22, 28, 34 };
+    private static final int BUCKETS = 64;
+    private static final int MASK = BUCKETS - 1;
+
+    private final Node<N>[][] wheel;
+    private long time;
+
+    TimerWheel(long time) {
+        this.time = time;
+        @SuppressWarnings("unchecked")
+        Node<N>[][] levels = (Node<N>[][])new Node<?>[SHIFT.length][BUCKETS];
+        wheel = levels;
+        for(int i = 0; i < SHIFT.length; i++) {
+            for(int j = 0; j < BUCKETS; j++) {
+                Node<N> sentinel = new Node<N>();
+                sentinel.wprev = sentinel;
+                sentinel.wnext = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Adds node into bucket given by its time.
+     */
+    void schedule(N node) {
+        Node<N> sentinel = bucket(node.time);
+        node.wprev = sentinel.wprev;
+        node.wnext = sentinel;
+        sentinel.wprev.wnext = node;
+        sentinel.wprev = node;
+    }
+
+    /**
+     * Removes node from its bucket if it is scheduled.
+     */
+    void deschedule(N node) {
+        if(node.wnext == null) return;
+        node.wprev.wnext = node.wnext;
+        node.wnext.wprev = node.wprev;
+        node.wprev = null;
+        node.wnext = null;
+    }
+
+    /**
+     * Moves wheel to given time and calls expired for each node
+     * with time before now. Such node is already descheduled.
+     */
+    void advance(long now, Consumer<N> expired) {
+        long previous = time;
+        if(now <= previous) return;
+        time = now;
+        for(int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previous >>> SHIFT[i];
+            long currentTicks = now >>> SHIFT[i];
+            long delta = currentTicks - previousTicks;
+            if(delta <= 0) break;
+            expire(i, previousTicks, delta, now, expired);
+        }
+    }
+
+    private void expire(int level, long previousTicks, long delta, long now, Consumer<N> expired) {
+        Node<N>[] buckets = wheel[level];
+        int start = (int)(previousTicks & MASK);
+        int end = start + (int)Math.min(delta, BUCKETS);
+        for(int i = start; i < end; i++) {
+            Node<N> sentinel = buckets[i & MASK];
+            Node<N> node = sentinel.wnext;
+            sentinel.wprev = sentinel;
+            sentinel.wnext = sentinel;
+            while(node != sentinel) {
+                Node<N> next = node.wnext;
+                node.wprev = null;
+                node.wnext = null;
+                // only sentinels are not of type N and they are not in lists
+                @SuppressWarnings("unchecked")
+                N n = (N)node;
+                if(n.time < now) expired.accept(n);
+                else schedule(n);
+                node = next;
+            }
+        }
+    }
+
+    private Node<N> bucket(long deadline) {
+        long duration = deadline - time;
+        if(duration < (1L << SHIFT[1])) return wheel[0][(int)((deadline >>> SHIFT[0]) & MASK)];
+        // upper levels use bucket before deadline, so node is moved to lower
+        // level at the beginning of deadline bucket and not at its end
+        int last = SHIFT.length - 1;
+        for(int i = 1; i < last; i++) {
+            if(duration < (1L << SHIFT[i + 1])) {
+                return wheel[i][(int)(((deadline >>> SHIFT[i]) - 1) & MASK)];
+            }
+        }
+        return wheel[last][(int)(((deadline >>> SHIFT[last]) - 1) & MASK)];
+    }
+
+    /**
+     * Node which can be scheduled in wheel.
+     */
+    static class Node<N> {
+        long time = Long.MAX_VALUE;
+        Node<N> wprev;
+        Node<N> wnext;
+    }
+}
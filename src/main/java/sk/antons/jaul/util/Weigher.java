@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+/**
+ * Computes weight of cache entry. Weight is used by MapCache.maximumWeight()
+ * (usually as approximate size in bytes).
+ *
+ * @author antons
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * Weight of entry.
+     * @param key key of entry
+     * @param value value of entry
+     * @return non negative weight
+     */
+    int weigh(K key, V value);
+
+    /**
+     * Approximate heap size in bytes of key and value. It knows String,
+     * byte[], char[] and Elem trees, other objects are counted as 16 bytes.
+     * @return weigher instance
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> Weigher<K, V> approximate() {
+        return (Weigher<K, V>)ApproximateWeigher.INSTANCE;
+    }
+}
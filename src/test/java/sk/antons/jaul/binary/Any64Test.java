@@ -15,9 +15,12 @@
  */
 package sk.antons.jaul.binary;
 
+import java.util.Arrays;
 import java.util.Random;
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import sk.antons.jaul.Benchmark;
 
 /**
  *
@@ -58,4 +61,154 @@ public class Any64Test {
         
     }
     
+    @Test
+	public void legacyEquality() throws Exception {
+        Random random = new Random(25);
+        for(int round = 0; round < 50; round++) {
+            char[] charset = charset(random, round % 2 == 0 ? 128 : 1000);
+            Any64 any = Any64.instance(charset);
+            LegacyAny64 legacy = new LegacyAny64(charset);
+            for(int i = 0; i < 200; i++) {
+                byte[] data = new byte[random.nextInt(40)];
+                random.nextBytes(data);
+                String encoded = legacy.encode(data);
+                Assert.assertEquals(encoded, any.encode(data));
+                Assert.assertArrayEquals(data, any.decode(encoded));
+            }
+            char invalid = (char)random.nextInt(2000);
+            if(new String(charset).indexOf(invalid) < 0) {
+                try {
+                    any.decode(new String(charset, 0, 3) + invalid);
+                    Assert.fail("invalid char " + invalid);
+                } catch(IllegalArgumentException e) {
+                    Assert.assertEquals("The char '"+invalid+"' is not valid base64 char.", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 64 unique chars lower than given bound.
+     */
+    private static char[] charset(Random random, int bound) {
+        StringBuilder sb = new StringBuilder();
+        while(sb.length() < 64) {
+            char c = (char)(33 + random.nextInt(bound - 33));
+            if(sb.indexOf(String.valueOf(c)) < 0) sb.append(c);
+        }
+        return sb.toString().toCharArray();
+    }
+
+    @Test
+    @Category(Benchmark.class)
+	public void throughput() throws Exception {
+        Random random = new Random(1);
+        byte[][] tokens = new byte[100000][];
+        for(int i = 0; i < tokens.length; i++) {
+            tokens[i] = new byte[24];
+            random.nextBytes(tokens[i]);
+        }
+        LegacyAny64 legacy = new LegacyAny64(base('-', '_'));
+        Any64 any = Any64.instance('-', '_');
+        for(int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long legacySum = 0;
+            for(byte[] token : tokens) legacySum += legacy.decode(legacy.encode(token))[5];
+            long legacyTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            long sum = 0;
+            for(byte[] token : tokens) sum += any.decode(any.encode(token))[5];
+            long tableTime = System.nanoTime() - start;
+            Assert.assertEquals(legacySum, sum);
+            System.out.println(" -- any64 100k tokens encode+decode tree: " + (legacyTime / 1000000) + "ms"
+                + " table: " + (tableTime / 1000000) + "ms");
+        }
+    }
+
+    private static char[] base(char plus, char slash) {
+        return ("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789" + plus + slash).toCharArray();
+    }
+
+    /**
+     * Original implementation which searches sorted charset (same pivots as
+     * its node tree) used as reference.
+     */
+    private static class LegacyAny64 {
+        private char[] charset;
+
+        private LegacyAny64(char[] charset) {
+            this.charset = Arrays.copyOf(charset, 64);
+            Arrays.sort(this.charset);
+        }
+
+        private String encode(byte[] value) {
+            int length = value.length;
+            int tripletNum = length / 3;
+            int tripletRest = length % 3;
+            StringBuilder sb = new StringBuilder(tripletNum*4 + 4);
+            int index = 0;
+            for (int i=0; i<tripletNum; i++) {
+                int byte1 = value[index++] & 0xff;
+                int byte2 = value[index++] & 0xff;
+                int byte3 = value[index++] & 0xff;
+                sb.append(charset[byte1 >> 2]);
+                sb.append(charset[(byte1 << 4)&0x3f | (byte2 >> 4)]);
+                sb.append(charset[(byte2 << 2)&0x3f | (byte3 >> 6)]);
+                sb.append(charset[byte3 & 0x3f]);
+            }
+            if (tripletRest > 0) {
+                int byte0 = value[index++] & 0xff;
+                sb.append(charset[byte0 >> 2]);
+                if (tripletRest == 1) {
+                    sb.append(charset[(byte0 << 4) & 0x3f]);
+                } else {
+                    int byte1 = value[index++] & 0xff;
+                    sb.append(charset[(byte0 << 4)&0x3f | (byte1 >> 4)]);
+                    sb.append(charset[(byte1 << 2)&0x3f]);
+                }
+            }
+            return sb.toString();
+        }
+
+        private byte[] decode(String value) {
+            int length = value.length();
+            int quaternionNum = length / 4;
+            int quaternionRest = length % 4;
+            byte[] buff = new byte[3*quaternionNum + (quaternionRest == 0 ? 0 : quaternionRest - 1)];
+            int sIndex = 0;
+            int bIndex = 0;
+            for (int i=0; i<quaternionNum; i++) {
+                int char1 = char2int(value.charAt(sIndex++), 0, 64);
+                int char2 = char2int(value.charAt(sIndex++), 0, 64);
+                int char3 = char2int(value.charAt(sIndex++), 0, 64);
+                int char4 = char2int(value.charAt(sIndex++), 0, 64);
+                buff[bIndex++] = (byte) ((char1 << 2) | (char2 >> 4));
+                buff[bIndex++] = (byte) ((char2 << 4) | (char3 >> 2));
+                buff[bIndex++] = (byte) ((char3 << 6) | char4);
+            }
+            if (quaternionRest > 1) {
+                int char1 = char2int(value.charAt(sIndex++), 0, 64);
+                int char2 = char2int(value.charAt(sIndex++), 0, 64);
+                buff[bIndex++] = (byte) ((char1 << 2) | (char2 >> 4));
+                if (quaternionRest > 2) {
+                    int char3 = char2int(value.charAt(sIndex++), 0, 64);
+                    buff[bIndex++] = (byte) ((char2 << 4) | (char3 >> 2));
+                }
+            }
+            return buff;
+        }
+
+        private int char2int(char c, int lindex, int uindex) {
+            int isize = uindex - lindex;
+            if(isize < 2) {
+                if(c == charset[lindex]) return lindex;
+                else throw new IllegalArgumentException("The char '"+c+"' is not valid base64 char.");
+            }
+            int pivot = lindex + isize / 2;
+            int cc = charset[pivot];
+            if(c == cc) return pivot;
+            else if(c < cc) return char2int(c, lindex, pivot);
+            else return char2int(c, pivot+1, uindex);
+        }
+    }
 }
@@ -17,9 +17,19 @@ package sk.antons.jaul.binary;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.StringReader;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import sk.antons.jaul.Benchmark;
 
 /**
  *
@@ -280,4 +290,409 @@ public class Base64Test {
         encoded = " YW 55IGN hcm\n5hbCB\rwbGVh\tc3VyZQ== ";
         Assert.assertEquals(result, new String(Base64.standard().decode(encoded)));
     }
+    @Test
+	public void decodeOverloads() throws Exception {
+        Random random = new Random(21);
+        char[] alphabet = "AZaz09+/-_= \n\t.\u010d".toCharArray();
+        Base64.Coder[] coders = { Base64.standard(), Base64.url(), Base64.otherBased('.', '_').padding('-').build() };
+        for(Base64.Coder coder : coders) {
+            for(int i = 0; i < 20000; i++) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(30);
+                for(int j = 0; j < length; j++) {
+                    if(random.nextInt(4) == 0) sb.append(alphabet[random.nextInt(alphabet.length)]);
+                    else sb.append(coder.encode(new byte[] { (byte)random.nextInt() }).charAt(0));
+                }
+                String text = sb.toString();
+                String expected = legacyDecode(coder, text);
+                Assert.assertEquals(text, expected, result(coder, text));
+                Assert.assertEquals(text, expected, result(coder, new StringBuilder(text)));
+                Assert.assertEquals(text, expected, result(coder, text.toCharArray()));
+                if(text.indexOf('\u010d') < 0) Assert.assertEquals(text, expected, result(coder, text.getBytes("us-ascii")));
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                try {
+                    coder.decode(new StringReader(text), os);
+                    Assert.assertEquals(text, expected, Arrays.toString(os.toByteArray()));
+                } catch(IllegalArgumentException e) {
+                    Assert.assertEquals(text, expected, e.getCause().getMessage());
+                }
+            }
+        }
+        byte[] data = new byte[100000];
+        random.nextBytes(data);
+        String encoded = Base64.standardBased().wrap(76).build().encode(data);
+        Assert.assertArrayEquals(data, Base64.standard().decode(encoded));
+        Assert.assertArrayEquals(data, Base64.standard().decode(encoded.getBytes("us-ascii")));
+    }
+
+    @Test
+	public void streams() throws Exception {
+        Random random = new Random(22);
+        Base64.Coder[] coders = {
+            Base64.standard(), Base64.url(),
+            Base64.standardBased().wrap(1).build(),
+            Base64.standardBased().wrap(4).build(),
+            Base64.urlBased().wrap(76).build()
+        };
+        for(Base64.Coder coder : coders) {
+            for(int i = 0; i < 500; i++) {
+                byte[] data = new byte[random.nextInt(i < 250 ? 20 : 30000)];
+                random.nextBytes(data);
+                StringBuilder expected = new StringBuilder();
+                legacyEncode(coder, new ByteArrayInputStream(data), expected);
+                StringBuilder current = new StringBuilder();
+                coder.encode(new ByteArrayInputStream(data), current);
+                Assert.assertEquals(expected.toString(), current.toString());
+
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                OutputStream os = coder.wrap(encoded);
+                int pos = 0;
+                while(pos < data.length) {
+                    int n = Math.min(data.length - pos, random.nextInt(5000));
+                    if(n == 1) os.write(data[pos]);
+                    else os.write(data, pos, n);
+                    pos += n;
+                }
+                os.close();
+                Assert.assertEquals(expected.toString(), new String(encoded.toByteArray(), "us-ascii"));
+
+                InputStream is = coder.wrap(new ByteArrayInputStream(encoded.toByteArray()));
+                ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1 + random.nextInt(5000)];
+                int n = is.read(buffer);
+                while(n > -1) {
+                    decoded.write(buffer, 0, n);
+                    if(random.nextInt(10) == 0) {
+                        int b = is.read();
+                        if(b < 0) break;
+                        decoded.write(b);
+                    }
+                    n = is.read(buffer);
+                }
+                Assert.assertArrayEquals(data, decoded.toByteArray());
+            }
+        }
+        try {
+            Base64.otherBased('\u010d', '/').build().wrap(new ByteArrayOutputStream());
+            Assert.fail("non ascii stream");
+        } catch(IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+	public void streamsThroughput() throws Exception {
+        byte[] data = new byte[16 * 1024 * 1024];
+        new Random(2).nextBytes(data);
+        Base64.Coder coder = Base64.standardBased().wrap(76).build();
+        for(int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            StringBuilder legacy = new StringBuilder();
+            legacyEncode(coder, new ByteArrayInputStream(data), legacy);
+            ByteArrayOutputStream legacyDecoded = new ByteArrayOutputStream();
+            legacyDecode(coder, new StringReader(legacy.toString()), legacyDecoded);
+            long legacyTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(legacy.length());
+            OutputStream os = coder.wrap(encoded);
+            Bytes.transfer(new ByteArrayInputStream(data), os);
+            os.close();
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream(data.length);
+            Bytes.transfer(coder.wrap(new ByteArrayInputStream(encoded.toByteArray())), decoded);
+            long streamTime = System.nanoTime() - start;
+            Assert.assertArrayEquals(legacyDecoded.toByteArray(), decoded.toByteArray());
+            System.out.println(" -- base64 16MB encode+decode legacy: " + (legacyTime / 1000000) + "ms"
+                + " streams: " + (streamTime / 1000000) + "ms");
+        }
+    }
+
+    /**
+     * Original byte by byte stream encoding used as reference.
+     */
+    private static void legacyEncode(Base64.Coder coder, InputStream is, StringBuilder sb) throws IOException {
+        byte[] alphabet = java.util.Base64.getDecoder().decode("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/");
+        char[] chars = coder.encode(alphabet).replace("\n", "").toCharArray();
+        int wrap = coder.encode(new byte[300]).indexOf('\n');
+        String one = coder.encode(new byte[] { 0 }).replace("\n", "");
+        char padding = one.length() > 2 ? one.charAt(2) : 0;
+        int position = 0;
+        int b1 = is.read();
+        while(b1 > -1) {
+            int b2 = is.read();
+            int b3 = b2 < 0 ? -1 : is.read();
+            int len = b2 < 0 ? 1 : (b3 < 0 ? 2 : 3);
+            b2 = b2 < 0 ? 0 : b2;
+            b3 = b3 < 0 ? 0 : b3;
+            position = legacyAppend(sb, chars[b1 >> 2], position, wrap);
+            position = legacyAppend(sb, chars[(b1 << 4) & 0x3f | (b2 >> 4)], position, wrap);
+            if(len > 1) position = legacyAppend(sb, chars[(b2 << 2) & 0x3f | (b3 >> 6)], position, wrap);
+            else if(padding != 0) position = legacyAppend(sb, padding, position, wrap);
+            if(len > 2) position = legacyAppend(sb, chars[b3 & 0x3f], position, wrap);
+            else if(padding != 0) position = legacyAppend(sb, padding, position, wrap);
+            b1 = len == 3 ? is.read() : -1;
+        }
+    }
+
+    private static int legacyAppend(StringBuilder sb, char c, int position, int wrap) {
+        sb.append(c);
+        if(wrap > 0) {
+            position++;
+            if(position >= wrap) {
+                sb.append('\n');
+                position = 0;
+            }
+        }
+        return position;
+    }
+
+    @Test
+	public void buffers() throws Exception {
+        Random random = new Random(23);
+        Base64.Coder[] coders = {
+            Base64.standard(), Base64.url(),
+            Base64.standardBased().wrap(1).build(),
+            Base64.standardBased().wrap(5).build(),
+            Base64.urlBased().nopadding().wrap(7).build(),
+            Base64.standardBased().wrap(76).build()
+        };
+        for(Base64.Coder coder : coders) {
+            for(int length = 0; length < 300; length++) {
+                byte[] data = new byte[length];
+                random.nextBytes(data);
+                String expected = coder.encode(data);
+                Assert.assertEquals(expected.length(), coder.encodedLength(length));
+                Assert.assertArrayEquals(expected.getBytes("us-ascii"), coder.encodeToBytes(data));
+
+                ByteBuffer src = ByteBuffer.allocateDirect(length + 3);
+                src.position(3);
+                src.put(data);
+                src.position(3);
+                ByteBuffer dst = ByteBuffer.allocateDirect(expected.length() + 2);
+                dst.position(2);
+                Assert.assertEquals(expected.length(), coder.encode(src, dst));
+                Assert.assertFalse(src.hasRemaining());
+                Assert.assertFalse(dst.hasRemaining());
+                dst.position(2);
+                byte[] encoded = new byte[expected.length()];
+                dst.get(encoded);
+                Assert.assertEquals(expected, new String(encoded, "us-ascii"));
+
+                ByteBuffer heap = ByteBuffer.wrap(("xx" + expected).getBytes("us-ascii"));
+                heap.position(2);
+                ByteBuffer decoded = ByteBuffer.allocateDirect(length);
+                Assert.assertEquals(length, coder.decode(heap.slice(), decoded));
+                decoded.flip();
+                byte[] result = new byte[decoded.remaining()];
+                decoded.get(result);
+                Assert.assertArrayEquals(data, result);
+                dst.position(2);
+                decoded.clear();
+                Assert.assertEquals(length, coder.decode(dst, decoded));
+            }
+        }
+        try {
+            Base64.standard().encode(ByteBuffer.wrap(new byte[3]), ByteBuffer.allocate(3));
+            Assert.fail("overflow");
+        } catch(BufferOverflowException e) {
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+	public void bytesThroughput() throws Exception {
+        byte[] data = new byte[16 * 1024 * 1024];
+        new Random(3).nextBytes(data);
+        Base64.Coder coder = Base64.standard();
+        for(int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            byte[] legacy = coder.encode(data).getBytes("us-ascii");
+            long legacyTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            byte[] bytes = coder.encodeToBytes(data);
+            long bytesTime = System.nanoTime() - start;
+            Assert.assertArrayEquals(legacy, bytes);
+            System.out.println(" -- base64 16MB to bytes string: " + (legacyTime / 1000000) + "ms"
+                + " direct: " + (bytesTime / 1000000) + "ms");
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+	public void registry() throws Exception {
+        Assert.assertSame(Base64.standard(), Base64.standardBased().build());
+        Assert.assertSame(Base64.url(), Base64.urlBased().nopadding().build());
+        Assert.assertSame(Base64.standardBased().wrap(76).build(), Base64.standardBased().wrap(76).build());
+        Assert.assertSame(Base64.otherBased('.', '_').build(), Base64.otherBased('.', '_').build());
+        Assert.assertNotSame(Base64.standardBased().wrap(76).build(), Base64.standardBased().wrap(64).build());
+        Assert.assertNotSame(Base64.standard(), Base64.url());
+        Assert.assertNotSame(Base64.url(), Base64.urlBased().build());
+
+        final Base64.Coder[] coders = new Base64.Coder[8];
+        Thread[] threads = new Thread[coders.length];
+        for(int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() { coders[index] = Base64.standardBased().wrap(33).build(); }
+            });
+        }
+        for(Thread thread : threads) thread.start();
+        for(Thread thread : threads) thread.join();
+        for(Base64.Coder coder : coders) Assert.assertSame(coders[0], coder);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Base64.decode(new StringReader("YWJj"), os);
+        Assert.assertEquals("abc", new String(os.toByteArray(), "us-ascii"));
+    }
+
+    private static String result(Base64.Coder coder, Object value) {
+        try {
+            if(value instanceof String) return Arrays.toString(coder.decode((String)value));
+            if(value instanceof CharSequence) return Arrays.toString(coder.decode((CharSequence)value));
+            if(value instanceof char[]) return Arrays.toString(coder.decode((char[])value));
+            return Arrays.toString(coder.decode((byte[])value));
+        } catch(IllegalArgumentException e) {
+            return e.getCause().getMessage();
+        }
+    }
+
+    @Test
+	public void decodeIndex() throws Exception {
+        Base64.Coder coder = Base64.standard();
+        String text = "QUJD\nR*==";
+        String message = "conversion failed at index 7";
+        try {
+            coder.decode(text);
+            Assert.fail("invalid string");
+        } catch(IllegalArgumentException e) {
+            Assert.assertEquals(message, e.getMessage());
+            Assert.assertEquals("The char '*' is not valid base64 char.", e.getCause().getMessage());
+        }
+        try {
+            coder.decode(new StringBuilder(text));
+            Assert.fail("invalid chars");
+        } catch(IllegalArgumentException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+        try {
+            coder.decode(text.toCharArray());
+            Assert.fail("invalid char array");
+        } catch(IllegalArgumentException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+        try {
+            coder.decode(text.getBytes("us-ascii"));
+            Assert.fail("invalid bytes");
+        } catch(IllegalArgumentException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+        try {
+            coder.decode(new StringReader(text), new ByteArrayOutputStream());
+            Assert.fail("invalid reader");
+        } catch(IllegalArgumentException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+        try {
+            ByteBuffer src = ByteBuffer.wrap(("xx" + text).getBytes("us-ascii"));
+            src.position(2);
+            coder.decode(src, ByteBuffer.allocate(10));
+            Assert.fail("invalid buffer");
+        } catch(IllegalArgumentException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+        try {
+            InputStream is = coder.wrap(new ByteArrayInputStream(text.getBytes("us-ascii")));
+            while(is.read() > -1);
+            Assert.fail("invalid stream");
+        } catch(IllegalArgumentException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+	public void decodeThroughput() throws Exception {
+        byte[] data = new byte[4 * 1024 * 1024];
+        new Random(1).nextBytes(data);
+        String encoded = Base64.standardBased().wrap(76).build().encode(data);
+        for(int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            legacyDecode(Base64.standard(), new StringReader(encoded), os);
+            long legacyTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            byte[] decoded = Base64.standard().decode(encoded);
+            long tableTime = System.nanoTime() - start;
+            Assert.assertArrayEquals(os.toByteArray(), decoded);
+            System.out.println(" -- base64 decode 4MB legacy: " + (legacyTime / 1000000) + "ms"
+                + " table: " + (tableTime / 1000000) + "ms");
+        }
+    }
+
+    private static String legacyDecode(Base64.Coder coder, String text) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            legacyDecode(coder, new StringReader(text), os);
+            return Arrays.toString(os.toByteArray());
+        } catch(IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Original char by char decoding used as reference.
+     */
+    private static void legacyDecode(Base64.Coder coder, Reader reader, OutputStream os) {
+        String chars = coder.encode(new byte[] { (byte)0xfb, (byte)0xff });
+        char pluss = chars.charAt(0);
+        char slash = chars.charAt(1);
+        String padded = coder.encode(new byte[] { 0 });
+        char padding = padded.length() > 2 ? padded.charAt(2) : 0;
+        try {
+            int position = 1;
+            int buff = 0;
+            int c = reader.read(); while(ignorable(c)) c = reader.read();
+            while((c > -1) && (c != padding)) {
+                int cint = char2int((char)c, pluss, slash);
+                switch(position) {
+                    case 1:
+                        buff = (cint << 2);
+                        break;
+                    case 2:
+                        buff = buff | (cint >> 4);
+                        os.write(buff);
+                        buff = (cint << 4);
+                        break;
+                    case 3:
+                        buff = buff | (cint >> 2);
+                        os.write(buff);
+                        buff = (cint << 6);
+                        break;
+                    case 4:
+                        buff = buff | cint;
+                        os.write(buff);
+                        buff = 0;
+                        break;
+                }
+                c = reader.read(); while(ignorable(c)) c = reader.read();
+                position++;
+                if(position >= 5) position = 1;
+            }
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int char2int(char c, char pluss, char slash) {
+        if(c == pluss) return 62;
+        if(c == slash) return 63;
+        if((c >= 'A') && (c <= 'Z')) return c - 'A' + 0;
+        if((c >= 'a') && (c <= 'z')) return c - 'a' + 26;
+        if((c >= '0') && (c <= '9')) return c - '0' + 52;
+        throw new IllegalArgumentException("The char '"+c+"' is not valid base64 char.");
+    }
+
+    private static boolean ignorable(int c) {
+        return (c == '\n') || (c == '\r') || (c == '\t') || (c == ' ');
+    }
 }
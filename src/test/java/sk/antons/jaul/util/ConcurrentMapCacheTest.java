@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sk.antons.jaul.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author antons
+ */
+public class ConcurrentMapCacheTest {
+
+    @Test
+	public void size() throws Exception {
+        Map<Integer, Integer> cache = ConcurrentMapCache.instance(Integer.class, Integer.class, 1)
+            .limit(10);
+        for(int i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+        System.out.println(" -- " + cache.keySet());
+        Assert.assertEquals("size", 10, cache.size());
+        for(int i = 0; i < 100; i++) {
+            if(i < 90) Assert.assertEquals("check " + i, null, cache.get(i));
+            else Assert.assertEquals("check " + i, (Integer)i, cache.get(i));
+        }
+    }
+
+    @Test
+	public void segmentedSize() throws Exception {
+        Map<Integer, Integer> cache = ConcurrentMapCache.instance(Integer.class, Integer.class, 4)
+            .limit(100);
+        for(int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        Assert.assertTrue("size " + cache.size(), cache.size() <= 100);
+        Assert.assertTrue("size " + cache.size(), cache.size() > 50);
+        Assert.assertEquals("last", (Integer)999, cache.get(999));
+    }
+
+    @Test
+	public void expiration() throws Exception {
+        Map<Integer, Integer> cache = ConcurrentMapCache.instance(Integer.class, Integer.class)
+            .expiration(1000);
+        for(int i = 0; i < 90; i++) {
+            cache.put(i, i);
+        }
+        Thread.sleep(1001);
+        for(int i = 90; i < 100; i++) {
+            cache.put(i, i);
+        }
+        System.out.println(" -- " + cache.keySet());
+        Assert.assertEquals("keys", 10, countKeys(cache));
+        for(int i = 0; i < 100; i++) {
+            if(i < 90) Assert.assertEquals("check " + i, null, cache.get(i));
+            else Assert.assertEquals("check " + i, (Integer)i, cache.get(i));
+        }
+    }
+
+    private static int countKeys(Map<Integer, Integer> cache) {
+        int rv = 0;
+        for(Integer key : cache.keySet()) rv++;
+        return rv;
+    }
+
+    @Test
+	public void views() throws Exception {
+        Map<Integer, Integer> cache = ConcurrentMapCache.instance(Integer.class, Integer.class);
+        for(int i = 0; i < 10; i++) {
+            cache.put(i, i * 10);
+        }
+        int sum = 0;
+        for(Map.Entry<Integer, Integer> entry : cache.entrySet()) {
+            Assert.assertEquals((Integer)(entry.getKey() * 10), entry.getValue());
+            sum = sum + entry.getValue();
+        }
+        Assert.assertEquals(450, sum);
+        Assert.assertTrue(cache.containsValue(90));
+        Assert.assertTrue(cache.keySet().remove(9));
+        Assert.assertFalse(cache.containsValue(90));
+        Assert.assertEquals(9, cache.values().size());
+        cache.clear();
+        Assert.assertTrue(cache.isEmpty());
+    }
+
+    @Test
+	public void stats() throws Exception {
+        ConcurrentMapCache<Integer, Integer> cache = ConcurrentMapCache.instance(Integer.class, Integer.class, 1)
+            .limit(10)
+            .recordStats(true);
+        for(int i = 0; i < 20; i++) {
+            cache.put(i, i);
+        }
+        for(int i = 0; i < 20; i++) {
+            cache.get(i);
+        }
+        CacheStats stats = cache.stats();
+        Assert.assertEquals(10, stats.hitCount());
+        Assert.assertEquals(10, stats.missCount());
+        Assert.assertEquals(10, stats.evictionCount());
+    }
+
+    @Test
+	public void threads() throws Exception {
+        final Map<Integer, Integer> cache = ConcurrentMapCache.instance(Integer.class, Integer.class, 8)
+            .limit(1000);
+        List<Thread> threads = new ArrayList<>();
+        final int[] errors = new int[1];
+        for(int t = 0; t < 8; t++) {
+            final int offset = t;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    for(int i = 0; i < 20000; i++) {
+                        int key = (i * 7 + offset) % 3000;
+                        Integer value = cache.get(key);
+                        if((value != null) && (value != key)) {
+                            synchronized(errors) { errors[0]++; }
+                        }
+                        if(value == null) cache.put(key, key);
+                        if(i % 100 == 0) cache.remove(key);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread : threads) thread.join();
+        Assert.assertEquals("errors", 0, errors[0]);
+        Assert.assertTrue("size " + cache.size(), cache.size() <= 1000);
+        int count = 0;
+        for(Integer key : cache.keySet()) count++;
+        Assert.assertEquals("size", count, cache.size());
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sk.antons.jaul.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.function.Function;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import sk.antons.jaul.Benchmark;
+
+/**
+ *
+ * @author antons
+ */
+public class CsvPipelineTest {
+
+    @Test
+	public void order() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 10000; i++) {
+            sb.append(i).append(",name ").append(i).append('\n');
+            if(i % 3 != 0) expected.append(i).append(",NAME ").append(i).append('\n');
+        }
+        StringWriter writer = new StringWriter();
+        long count = CsvPipeline.instance()
+            .source(Csv.instance().iterator(new StringReader(sb.toString())))
+            .transform(new Function<Csv.Record, Csv.Record>() {
+                public Csv.Record apply(Csv.Record record) {
+                    if(Integer.parseInt(record.field(0)) % 3 == 0) return null;
+                    return Csv.Record.instance(record.row()).field(record.field(0)).field(record.field(1).toUpperCase());
+                }
+            })
+            .target(Csv.instance().appender(writer))
+            .threads(3)
+            .batchSize(7)
+            .queueSize(2)
+            .run();
+        Assert.assertEquals(6666, count);
+        Assert.assertEquals(expected.toString(), writer.toString());
+    }
+
+    @Test
+	public void failure() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 10000; i++) sb.append(i).append('\n');
+        try {
+            CsvPipeline.instance()
+                .source(Csv.instance().iterator(new StringReader(sb.toString())))
+                .transform(new Function<Csv.Record, Csv.Record>() {
+                    public Csv.Record apply(Csv.Record record) {
+                        if("5000".equals(record.field(0))) throw new IllegalArgumentException("bad record");
+                        return record;
+                    }
+                })
+                .target(Csv.instance().appender(new StringWriter()))
+                .threads(2)
+                .batchSize(10)
+                .run();
+            Assert.fail("transform failure");
+        } catch(IllegalArgumentException e) {
+            // runtime exceptions of transformation are rethrown
+            Assert.assertEquals("bad record", e.getMessage());
+        }
+    }
+
+    /**
+     * Size of benchmark file can be changed by -Dcsv.pipeline.mb=1024.
+     */
+    @Test
+    @Category(Benchmark.class)
+	public void throughput() throws Exception {
+        int mb = Integer.getInteger("csv.pipeline.mb", 20);
+        File input = File.createTempFile("jaul-pipeline", ".csv");
+        input.deleteOnExit();
+        File output = File.createTempFile("jaul-pipeline-out", ".csv");
+        output.deleteOnExit();
+        OutputStream os = new FileOutputStream(input);
+        Csv.Appender appender = Csv.instance().appender(os);
+        long size = (long)mb * 1024 * 1024;
+        for(int i = 0; size > 0; i++) {
+            appender.field(i).field("customer " + i).field("street " + (i % 997) + ", city").field(i * 1.25).recordEnd();
+            size -= 60;
+        }
+        appender.close();
+        Function<Csv.Record, Csv.Record> transform = new Function<Csv.Record, Csv.Record>() {
+            public Csv.Record apply(Csv.Record record) {
+                BigDecimal amount = new BigDecimal(record.field(3)).multiply(new BigDecimal("1.2"));
+                return Csv.Record.instance(record.row())
+                    .field(record.field(0))
+                    .field(record.field(1).toUpperCase())
+                    .field(amount.setScale(2, RoundingMode.HALF_UP).toPlainString());
+            }
+        };
+        for(int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            InputStream is = new FileInputStream(input);
+            Iterator<Csv.Record> iter = Csv.instance().iterator(is);
+            Csv.Appender out = Csv.instance().appender(new FileOutputStream(output));
+            long sequential = 0;
+            while(iter.hasNext()) {
+                out.record(transform.apply(iter.next()));
+                sequential++;
+            }
+            out.close();
+            is.close();
+            long sequentialTime = System.nanoTime() - start;
+            byte[] expected = Files.readAllBytes(output.toPath());
+
+            start = System.nanoTime();
+            is = new FileInputStream(input);
+            out = Csv.instance().appender(new FileOutputStream(output));
+            long piped = CsvPipeline.instance()
+                .source(Csv.instance().iterator(is))
+                .transform(transform)
+                .target(out)
+                .threads(2)
+                .run();
+            out.close();
+            is.close();
+            long pipelineTime = System.nanoTime() - start;
+            Assert.assertEquals(sequential, piped);
+            Assert.assertArrayEquals(expected, Files.readAllBytes(output.toPath()));
+            System.out.println(" -- csv pipeline " + mb + "MB sequential: " + (sequentialTime / 1000000) + "ms"
+                + " pipeline: " + (pipelineTime / 1000000) + "ms"
+                + " cpus: " + Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
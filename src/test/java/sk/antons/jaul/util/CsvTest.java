@@ -0,0 +1,964 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterWriter;
+import java.io.Flushable;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import sk.antons.jaul.Benchmark;
+
+/**
+ *
+ * @author antons
+ */
+public class CsvTest {
+
+    @Test
+	public void tokens() throws Exception {
+        Assert.assertEquals("[a, b, c, |, d, |]", tokens("a,b,c\nd\n", 1024));
+        Assert.assertEquals("[a, b, c, |, d, |]", tokens("a,b,c\r\nd", 1024));
+        Assert.assertEquals("[a,b, x\"y, , |]", tokens("\"a,b\",\"x\"\"y\",\n", 1024));
+        Assert.assertEquals("[, , |, , |, a\rb, |]", tokens(",\n\na\rb", 1024));
+        Assert.assertEquals("[multi\nline, |]", tokens("\"multi\nline\"", 1024));
+    }
+
+    @Test
+	public void legacyEquality() throws Exception {
+        Random random = new Random(1);
+        char[] alphabet = { 'a', 'b', ',', '"', '\n', '\r', ' ', ';' };
+        for(int i = 0; i < 20000; i++) {
+            int length = random.nextInt(40);
+            StringBuilder sb = new StringBuilder();
+            for(int j = 0; j < length; j++) sb.append(alphabet[random.nextInt(alphabet.length)]);
+            String text = sb.toString();
+            String expected = legacyTokens(text);
+            for(int size : new int[] { 1, 2, 3, 7, 1024 }) {
+                Assert.assertEquals("'" + text + "' " + size, expected, tokens(text, size));
+            }
+        }
+    }
+
+    @Test
+	public void records() throws Exception {
+        Iterator<Csv.Record> iter = Csv.instance().delimiter(';').iterator(new StringReader("a;b\n\"c;\";d\n"));
+        Csv.Record record = iter.next();
+        Assert.assertEquals(0, record.row());
+        Assert.assertEquals("[a, b]", record.fields().toString());
+        record = iter.next();
+        Assert.assertEquals("[c;, d]", record.fields().toString());
+        Assert.assertFalse(iter.hasNext());
+    }
+
+    @Test
+	public void current() throws Exception {
+        Csv.Scanner scanner = Csv.Scanner.instance(new StringReader("12,-9223372036854775808,\"1.50\",abc,+7\n"), ',', '"', 4);
+        scanner.next();
+        Assert.assertEquals(12, scanner.currentAsInt());
+        Assert.assertEquals("12", scanner.currentChars().toString());
+        scanner.next();
+        Assert.assertEquals(Long.MIN_VALUE, scanner.currentAsLong());
+        try {
+            scanner.currentAsInt();
+            Assert.fail("out of int range");
+        } catch(NumberFormatException e) {
+        }
+        scanner.next();
+        Assert.assertEquals(new BigDecimal("1.50"), scanner.currentAsDecimal());
+        scanner.next();
+        Assert.assertTrue(scanner.currentEquals("abc"));
+        Assert.assertFalse(scanner.currentEquals("ab"));
+        CharSequence chars = scanner.currentChars();
+        Assert.assertEquals('b', chars.charAt(1));
+        Assert.assertEquals("bc", chars.subSequence(1, 3).toString());
+        scanner.next();
+        Assert.assertEquals(7, scanner.currentAsLong());
+        for(String bad : new String[] { "", "-", "1a", "9223372036854775808" }) {
+            scanner = Csv.Scanner.instance(new StringReader(bad + ",x"), ',', '"');
+            scanner.next();
+            try {
+                scanner.currentAsLong();
+                Assert.fail("bad number '" + bad + "'");
+            } catch(NumberFormatException e) {
+            }
+        }
+    }
+
+    @Test
+	public void rows() throws Exception {
+        Random random = new Random(2);
+        char[] alphabet = { 'a', 'b', ',', '"', '\n', '\r', ' ', '1' };
+        for(int i = 0; i < 5000; i++) {
+            int length = random.nextInt(60);
+            StringBuilder sb = new StringBuilder();
+            for(int j = 0; j < length; j++) sb.append(alphabet[random.nextInt(alphabet.length)]);
+            String text = sb.toString();
+            List<String> expected = new ArrayList<String>();
+            Iterator<Csv.Record> iter = Csv.instance().iterator(new StringReader(text));
+            while(iter.hasNext()) expected.add(iter.next().toString());
+            for(int size : new int[] { 1, 3, 1024 }) {
+                List<String> rows = new ArrayList<String>();
+                Csv.Scanner scanner = Csv.Scanner.instance(new StringReader(text), ',', '"', size);
+                Csv.Row row = Csv.Row.instance();
+                while(scanner.next(row)) rows.add(row.toString());
+                Assert.assertEquals("'" + text + "' " + size, expected, rows);
+            }
+        }
+        Csv.Scanner scanner = Csv.Scanner.instance(new StringReader("id,amount\n1,\"10.5\"\n2,3\n"), ',', '"', 2);
+        Csv.Row row = Csv.Row.instance();
+        scanner.next(row);
+        Assert.assertTrue(row.equals(0, "id"));
+        long sum = 0;
+        BigDecimal amount = BigDecimal.ZERO;
+        while(scanner.next(row)) {
+            sum += row.asLong(0);
+            amount = amount.add(row.asDecimal(1));
+        }
+        Assert.assertEquals(3, sum);
+        Assert.assertEquals(new BigDecimal("13.5"), amount);
+        Assert.assertEquals(2, row.row());
+    }
+
+    @Test
+	public void stream() throws Exception {
+        final boolean[] closed = { false };
+        // endless csv data
+        Reader reader = new Reader() {
+            long row = 0;
+            String line = "";
+            int pos = 0;
+            public int read(char[] cbuf, int off, int len) {
+                if(pos == line.length()) {
+                    line = row++ + ",name" + row + "\n";
+                    pos = 0;
+                }
+                int n = Math.min(len, line.length() - pos);
+                line.getChars(pos, pos + n, cbuf, off);
+                pos += n;
+                return n;
+            }
+            public void close() { closed[0] = true; }
+        };
+        Stream<Csv.Record> stream = Csv.instance().stream(reader);
+        List<String> names = stream
+            .filter(new Predicate<Csv.Record>() {
+                public boolean test(Csv.Record record) { return record.row() % 2 == 0; }
+            })
+            .limit(3)
+            .map(new Function<Csv.Record, String>() {
+                public String apply(Csv.Record record) { return record.field(1); }
+            })
+            .collect(Collectors.<String>toList());
+        Assert.assertEquals("[name1, name3, name5]", names.toString());
+        Assert.assertFalse(closed[0]);
+        stream.close();
+        Assert.assertTrue(closed[0]);
+
+        StringReader sr = new StringReader("a,b\nc,d\n");
+        Assert.assertEquals(2, Csv.instance().stream(sr).count());
+        try {
+            sr.read();
+            Assert.fail("closed at end");
+        } catch(java.io.IOException e) {
+        }
+    }
+
+    @Test
+	public void header() throws Exception {
+        String text = "id,name,amount\n1,john,10.5\n2,jane,\n";
+        Iterator<Csv.Record> iter = Csv.instance().withHeader().iterator(new StringReader(text));
+        Csv.Record record = iter.next();
+        Assert.assertEquals(1, record.row());
+        Assert.assertEquals("john", record.column("name"));
+        Assert.assertEquals("[id, name, amount]", record.header().toString());
+        Assert.assertEquals("", iter.next().column("amount"));
+        Assert.assertFalse(iter.hasNext());
+        Assert.assertEquals(2, Csv.instance().withHeader().stream(new StringReader(text)).count());
+        try {
+            record.column("unknown");
+            Assert.fail("unknown column");
+        } catch(IllegalArgumentException e) {
+        }
+    }
+
+    public static enum Kind { PERSON, COMPANY }
+
+    public static class Customer {
+        private long id;
+        private String name;
+        private BigDecimal amount;
+        private LocalDate born;
+        private boolean active;
+        Kind kind;
+        private Integer score;
+        public void setId(long id) { this.id = id; }
+        public Customer name(String name) { this.name = name; return this; }
+        public void setAmount(BigDecimal amount) { this.amount = amount; }
+        public void setBorn(LocalDate born) { this.born = born; }
+        public void setActive(boolean active) { this.active = active; }
+        @Override
+        public String toString() { return id + "|" + name + "|" + amount + "|" + born + "|" + active + "|" + kind + "|" + score; }
+    }
+
+    @Test
+	public void mapper() throws Exception {
+        String text = "ID,Name,amount,birth_date,active,kind,score,ignored\n"
+            + "1,john,\"10,5\",01.02.1990,true,PERSON,7,x\n"
+            + "2,acme,,,,COMPANY,,y\n";
+        RecordMapper<Customer> mapper = RecordMapper.instance(Customer.class)
+            .bindAll()
+            .bind("birth_date", "born")
+            .dateFormat("dd.MM.yyyy");
+        List<Customer> customers = Csv.instance().withHeader()
+            .stream(new StringReader(text))
+            .map(mapper)
+            .collect(Collectors.<Customer>toList());
+        Assert.assertEquals("1|john|10.5|1990-02-01|true|PERSON|7", customers.get(0).toString());
+        Assert.assertEquals("2|acme|null|null|false|COMPANY|null", customers.get(1).toString());
+
+        RecordMapper<Customer> byIndex = RecordMapper.instance(Customer.class)
+            .bind(0, "id")
+            .bind(1, "name");
+        Customer customer = byIndex.map(Csv.instance().iterator(new StringReader("5,bob")).next());
+        Assert.assertEquals("5|bob|null|null|false|null|null", customer.toString());
+        try {
+            byIndex.map(Csv.instance().iterator(new StringReader("x,bob")).next());
+            Assert.fail("bad number");
+        } catch(IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Unable to map row 0"));
+        }
+    }
+
+    @Test
+	public void mapperParallel() throws Exception {
+        File file = File.createTempFile("jaul-csv", ".csv");
+        file.deleteOnExit();
+        StringBuilder sb = new StringBuilder("ID,Name,amount,kind\n");
+        for(int i = 0; i < 200000; i++) sb.append(i).append(",name ").append(i).append(',').append(i % 100).append(",PERSON\n");
+        Files.write(file.toPath(), sb.toString().getBytes("utf-8"));
+        Csv csv = Csv.instance().withHeader().columns("Name", "ID");
+        List<Csv.Record> records = csv.parallel(file.toPath(), 4).sequential().collect(Collectors.<Csv.Record>toList());
+        Assert.assertEquals(200000, records.size());
+        Assert.assertEquals("[Name, ID]", records.get(0).header().toString());
+        for(Csv.Record record : records) Assert.assertSame(records.get(0).header(), record.header());
+
+        RecordMapper<Customer> mapper = RecordMapper.instance(Customer.class).bindAll();
+        Stream<Csv.Record> stream = csv.parallel(file.toPath(), 4);
+        List<Customer> customers = stream.map(mapper).collect(Collectors.<Customer>toList());
+        stream.close();
+        Assert.assertEquals(200000, customers.size());
+        for(int i = 0; i < customers.size(); i += 999) {
+            Assert.assertEquals(i + "|name " + i + "|null|null|false|null|null", customers.get(i).toString());
+        }
+        // other header instance with the same names reuses binders
+        Csv.Record record = Csv.instance().withHeader().iterator(new StringReader("Name,ID\nbob,5\n")).next();
+        Assert.assertEquals("5|bob|null|null|false|null|null", mapper.map(record).toString());
+    }
+
+    @Test
+	public void columns() throws Exception {
+        String text = "id,name,amount\n1,john,10.5\n2,jane\n3,\"bob, jr\",7\n";
+        Iterator<Csv.Record> iter = Csv.instance().withHeader().columns("amount", "id").iterator(new StringReader(text));
+        Csv.Record record = iter.next();
+        Assert.assertEquals("[amount, id]", record.header().toString());
+        Assert.assertEquals("10.5", record.field(0));
+        Assert.assertEquals("1", record.column("id"));
+        Assert.assertEquals(2, record.size());
+        Assert.assertEquals("", iter.next().column("amount"));
+        Assert.assertEquals(3, iter.next().row());
+
+        List<Csv.Record> records = Csv.instance().columns(1).filter(new Predicate<Csv.Row>() {
+                public boolean test(Csv.Row row) { return row.chars(0).length() > 4; }
+            }).stream(new StringReader(text)).collect(Collectors.<Csv.Record>toList());
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals("bob, jr", records.get(0).field(0));
+        Assert.assertEquals(3, records.get(0).row());
+
+        try {
+            Csv.instance().columns("id").iterator(new StringReader(text));
+            Assert.fail("columns by name without header");
+        } catch(IllegalArgumentException e) {
+        }
+
+        File file = File.createTempFile("jaul-csv", ".csv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), wide(50000, 30).getBytes("utf-8"));
+        Csv csv = Csv.instance().withHeader().columns("c27", "c3").filter(new Predicate<Csv.Row>() {
+                public boolean test(Csv.Row row) { return row.asLong(1) % 100 == 7; }
+            });
+        List<String> expected = new ArrayList<String>();
+        for(Csv.Record r : csv.stream(file.toPath()).collect(Collectors.<Csv.Record>toList())) expected.add(r.row() + " " + r);
+        List<String> parallel = new ArrayList<String>();
+        Stream<Csv.Record> stream = csv.parallel(file.toPath(), 3);
+        for(Csv.Record r : stream.sequential().collect(Collectors.<Csv.Record>toList())) parallel.add(r.row() + " " + r);
+        stream.close();
+        Assert.assertEquals(500, expected.size());
+        Assert.assertEquals(expected, parallel);
+    }
+
+    @Test
+	public void resume() throws Exception {
+        File file = File.createTempFile("jaul-csv", ".csv");
+        file.deleteOnExit();
+        StringBuilder sb = new StringBuilder("id,name,note\n");
+        for(int i = 0; i < 20000; i++) {
+            sb.append(i).append(",\u010dlovek ").append(i).append(",\"multi\nline, \"\"").append(i % 7).append("\"\"\"\n");
+        }
+        byte[] data = sb.toString().getBytes("utf-8");
+        Files.write(file.toPath(), data);
+        Csv csv = Csv.instance().withHeader();
+        List<Csv.Record> all = csv.stream(file.toPath()).collect(Collectors.<Csv.Record>toList());
+        Assert.assertEquals(20000, all.size());
+        Csv.Record record = all.get(0);
+        Assert.assertEquals(13, record.offset());
+        Csv.Record last = all.get(all.size() - 1);
+        Assert.assertEquals(data.length, last.end());
+        String text = new String(data, (int)last.offset(), (int)(last.end() - last.offset()), "utf-8");
+        Assert.assertTrue(text, text.startsWith("19999,\u010dlovek 19999,"));
+
+        for(int checkpoint : new int[] { 0, 1, 999, 1000, 12345, 19998 }) {
+            Csv.Record done = all.get(checkpoint);
+            List<Csv.Record> rest = csv.stream(file.toPath(), done.end(), done.row() + 1).collect(Collectors.<Csv.Record>toList());
+            Assert.assertEquals(all.size() - checkpoint - 1, rest.size());
+            for(int i = 0; i < rest.size(); i++) {
+                Csv.Record expected = all.get(checkpoint + 1 + i);
+                Csv.Record resumed = rest.get(i);
+                Assert.assertEquals(expected.toString(), resumed.toString());
+                Assert.assertEquals(expected.offset(), resumed.offset());
+                Assert.assertEquals(expected.end(), resumed.end());
+                Assert.assertEquals(expected.column("name"), resumed.column("name"));
+            }
+        }
+        Assert.assertEquals(0, csv.stream(file.toPath(), last.end(), last.row() + 1).count());
+
+        Stream<Csv.Record> stream = csv.parallel(file.toPath(), 3);
+        List<Csv.Record> parallel = stream.sequential().collect(Collectors.<Csv.Record>toList());
+        stream.close();
+        for(int i = 0; i < all.size(); i++) {
+            Assert.assertEquals(all.get(i).offset(), parallel.get(i).offset());
+            Assert.assertEquals(all.get(i).end(), parallel.get(i).end());
+        }
+
+        Csv.Scanner scanner = Csv.instance().scanner(new StringReader("a,\u010d\nb\n"));
+        Csv.Row row = Csv.Row.instance();
+        scanner.next(row);
+        Assert.assertEquals(0, row.offset());
+        Assert.assertEquals(4, scanner.offset());
+        scanner.next(row);
+        Assert.assertEquals(4, row.offset());
+        try {
+            csv.encoding("utf-16").stream(file.toPath(), 10, 1);
+            Assert.fail("resume of multi byte encoding");
+        } catch(IllegalArgumentException e) {
+        }
+
+        // quoted first field, empty first field and blank line
+        Files.write(file.toPath(), "a,b\n\"q\",c\n,d\n\nlast,x\n".getBytes("utf-8"));
+        csv = Csv.instance();
+        all = csv.stream(file.toPath()).collect(Collectors.<Csv.Record>toList());
+        Assert.assertEquals(5, all.size());
+        long[] offsets = { 0, 4, 10, 13, 14 };
+        for(int i = 0; i < all.size(); i++) {
+            Assert.assertEquals(offsets[i], all.get(i).offset());
+            List<Csv.Record> rest = csv.stream(file.toPath(), all.get(i).offset(), all.get(i).row()).collect(Collectors.<Csv.Record>toList());
+            Assert.assertEquals(all.subList(i, all.size()).toString(), rest.toString());
+        }
+        Assert.assertEquals("row(1): [q, c]", all.get(1).toString());
+        scanner = Csv.instance().scanner(new StringReader("\"q\",c\n,d\n\nx\n"));
+        scanner.next(row);
+        Assert.assertEquals(0, row.offset());
+        scanner.next(row);
+        Assert.assertEquals(6, row.offset());
+        scanner.next(row);
+        Assert.assertEquals(9, row.offset());
+        scanner.next(row);
+        Assert.assertEquals(10, row.offset());
+    }
+
+    @Test
+    @Category(Benchmark.class)
+	public void columnsThroughput() throws Exception {
+        String text = wide(20000, 120);
+        int mb = text.length() / 1024 / 1024;
+        Predicate<Csv.Record> keep = new Predicate<Csv.Record>() {
+            public boolean test(Csv.Record record) { return Long.parseLong(record.column("c3")) % 100 == 7; }
+        };
+        Csv projected = Csv.instance().withHeader().columns("c0", "c3", "c99").filter(new Predicate<Csv.Row>() {
+                public boolean test(Csv.Row row) { return row.asLong(1) % 100 == 7; }
+            });
+        for(int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long all = Csv.instance().withHeader().stream(new StringReader(text)).filter(keep).count();
+            long allTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            long selected = projected.stream(new StringReader(text)).count();
+            long selectedTime = System.nanoTime() - start;
+            Assert.assertEquals(all, selected);
+            System.out.println(" -- csv " + mb + "MB all columns: " + (allTime / 1000000) + "ms"
+                + " projected: " + (selectedTime / 1000000) + "ms");
+        }
+    }
+
+    /**
+     * Csv with header c0,c1,... where c3 contains row number.
+     */
+    private static String wide(int rows, int columns) {
+        StringBuilder sb = new StringBuilder();
+        for(int j = 0; j < columns; j++) sb.append(j == 0 ? "" : ",").append('c').append(j);
+        sb.append('\n');
+        for(int i = 0; i < rows; i++) {
+            for(int j = 0; j < columns; j++) {
+                if(j > 0) sb.append(',');
+                if(j == 3) sb.append(i);
+                else if(j % 10 == 5) sb.append("\"text, ").append(j).append('"');
+                else sb.append("value").append(j);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+	public void parallel() throws Exception {
+        File file = File.createTempFile("jaul-csv", ".csv");
+        file.deleteOnExit();
+        Random random = new Random(3);
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 100000; i++) {
+            sb.append(i).append(",\"multi\nline \"\"").append(random.nextInt(1000)).append("\"\"\nfield\",");
+            sb.append("plain ").append(random.nextInt()).append(",\"a,b\"\n");
+            if(i == 50000) {
+                // quoted field longer than chunk
+                sb.append("big,\"");
+                for(int j = 0; j < 100000; j++) sb.append("x\n\"\"");
+                sb.append("\"\n");
+            }
+        }
+        Files.write(file.toPath(), sb.toString().getBytes("utf-8"));
+        List<String> expected = new ArrayList<String>();
+        Iterator<Csv.Record> iter = Csv.instance().iterator(new FileInputStream(file));
+        while(iter.hasNext()) expected.add(iter.next().toString());
+        Stream<Csv.Record> stream = Csv.instance().parallel(file.toPath(), 4);
+        List<String> records = stream.sequential().map(new Function<Csv.Record, String>() {
+            public String apply(Csv.Record record) { return record.toString(); }
+        }).collect(Collectors.<String>toList());
+        stream.close();
+        Assert.assertEquals(expected.size(), records.size());
+        Assert.assertEquals(expected, records);
+        Assert.assertEquals(100001, Csv.instance().parallel(file.toPath(), 3).count());
+        Csv.Record first = Csv.instance().withHeader().parallel(file.toPath(), 3).sequential().findFirst().get();
+        Assert.assertEquals(1, first.row());
+        Assert.assertEquals(expected.get(1), first.toString());
+        Assert.assertEquals("a,b", first.column("a,b"));
+    }
+
+    @Test
+    @Category(Benchmark.class)
+	public void parallelThroughput() throws Exception {
+        File file = File.createTempFile("jaul-csv", ".csv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), sample(200000).getBytes("utf-8"));
+        int mb = (int)(file.length() / 1024 / 1024);
+        for(int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long sequential = Csv.instance().stream(file.toPath()).count();
+            long sequentialTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            Stream<Csv.Record> stream = Csv.instance().parallel(file.toPath(), 4);
+            long parallel = stream.count();
+            stream.close();
+            long parallelTime = System.nanoTime() - start;
+            Assert.assertEquals(sequential, parallel);
+            System.out.println(" -- csv " + mb + "MB sequential: " + (sequentialTime / 1000000) + "ms"
+                + " parallel(4): " + (parallelTime / 1000000) + "ms");
+        }
+    }
+
+    @Test
+	public void bytes() throws Exception {
+        Random random = new Random(4);
+        char[] alphabet = { 'a', '\u010d', '\u017e', ',', '"', '\n', '\r', ' ', '1' };
+        for(String encoding : new String[] { "utf-8", "cp1250" }) {
+            Charset charset = Charset.forName(encoding);
+            for(int i = 0; i < 5000; i++) {
+                int length = random.nextInt(40);
+                StringBuilder sb = new StringBuilder();
+                for(int j = 0; j < length; j++) sb.append(alphabet[random.nextInt(alphabet.length)]);
+                String text = sb.toString();
+                String expected = tokens(text, 1024);
+                for(int size : new int[] { 1, 2, 5, 1024 }) {
+                    Csv.Scanner scanner = Csv.ByteScanner.instance(new ByteArrayInputStream(text.getBytes(charset)), charset, ',', '"', size);
+                    Assert.assertEquals("'" + text + "' " + size, expected, tokens(scanner));
+                }
+            }
+        }
+        Assert.assertFalse("opt-in", Csv.instance().scanner(new ByteArrayInputStream(new byte[0])) instanceof Csv.ByteScanner);
+        Assert.assertTrue(Csv.instance().byteScanner(true).scanner(new ByteArrayInputStream(new byte[0])) instanceof Csv.ByteScanner);
+        Assert.assertFalse(Csv.instance().byteScanner(true).encoding("utf-16").scanner(new ByteArrayInputStream(new byte[0])) instanceof Csv.ByteScanner);
+        Csv.Scanner scanner = Csv.instance().byteScanner(true).scanner(new ByteArrayInputStream("12,1.5,\u010dau,abc\n".getBytes("utf-8")));
+        scanner.next();
+        Assert.assertEquals(12, scanner.currentAsInt());
+        scanner.next();
+        Assert.assertEquals(new BigDecimal("1.5"), scanner.currentAsDecimal());
+        scanner.next();
+        Assert.assertTrue(scanner.currentEquals("\u010dau"));
+        Assert.assertEquals("\u010dau", scanner.currentChars().toString());
+        scanner.next();
+        Assert.assertEquals('b', scanner.currentChars().charAt(1));
+    }
+
+    @Test
+    @Category(Benchmark.class)
+	public void bytesThroughput() throws Exception {
+        byte[] data = sample(200000).getBytes("utf-8");
+        int mb = data.length / 1024 / 1024;
+        for(int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long decoded = countFields(Csv.Scanner.instance(new InputStreamReader(new ByteArrayInputStream(data), "utf-8"), ',', '"'));
+            long decodedTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            long bytes = countFields(Csv.ByteScanner.instance(new ByteArrayInputStream(data), Charset.forName("utf-8"), ',', '"'));
+            long bytesTime = System.nanoTime() - start;
+            Assert.assertEquals(decoded, bytes);
+            System.out.println(" -- csv " + mb + "MB reader: " + (decodedTime / 1000000) + "ms"
+                + " bytes: " + (bytesTime / 1000000) + "ms");
+        }
+    }
+
+    /**
+     * Materializes only first and fourth column as typical import does.
+     */
+    private static long countFields(Csv.Scanner scanner) {
+        long rv = 0;
+        Csv.Row row = Csv.Row.instance();
+        while(scanner.next(row)) {
+            rv += row.asLong(0);
+            rv += row.field(1).length();
+            if(row.equals(5, "2024-01-15")) rv++;
+        }
+        return rv;
+    }
+
+    @Test
+    @Category(Benchmark.class)
+	public void throughput() throws Exception {
+        String text = sample(200000);
+        int mb = text.length() / 1024 / 1024;
+        for(int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long legacy = countLegacy(new StringReader(text));
+            long legacyTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            long current = count(new StringReader(text));
+            long currentTime = System.nanoTime() - start;
+            Assert.assertEquals(legacy, current);
+            System.out.println(" -- csv " + mb + "MB legacy: " + (legacyTime / 1000000) + "ms"
+                + " window: " + (currentTime / 1000000) + "ms");
+        }
+    }
+
+    @Test
+	public void appender() throws Exception {
+        Random random = new Random(5);
+        char[] alphabet = { 'a', 'b', ',', '"', '\n', '\r', ' ', '1' };
+        String[] replacers = { null, " ", "\\n", "\n" };
+        for(int i = 0; i < 3000; i++) {
+            String[] fields = new String[1 + random.nextInt(4)];
+            for(int j = 0; j < fields.length; j++) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(12);
+                for(int k = 0; k < length; k++) sb.append(alphabet[random.nextInt(alphabet.length)]);
+                fields[j] = sb.toString();
+            }
+            boolean force = random.nextBoolean();
+            String replacer = replacers[random.nextInt(replacers.length)];
+            StringBuilder expected = new StringBuilder();
+            LegacyAppender legacy = LegacyAppender.instance(expected, ',', '"', force, replacer);
+            StringWriter writer = new StringWriter();
+            Csv.Appender appender = Csv.Appender.instance(new BufferedWriterProbe(writer), ',', '"', force, replacer, 4);
+            for(String field : fields) {
+                legacy.field(field);
+                appender.field(field);
+            }
+            legacy.recordEnd();
+            appender.recordEnd();
+            appender.flush();
+            Assert.assertEquals(expected.toString(), writer.toString());
+            // unquoted single '\r' is not readable back
+            if((replacer == null) && !Arrays.toString(fields).contains("\r")) {
+                Csv.Record record = Csv.instance().iterator(new StringReader(writer.toString())).next();
+                for(int j = 0; j < fields.length; j++) Assert.assertEquals(fields[j], record.field(j));
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        Csv.instance().delimiter(';').appender(sb)
+            .field(12).field(-9223372036854775808L).field(1.5).field("a;b").recordEnd()
+            .field((String)null).field("x").recordEnd();
+        Assert.assertEquals("12;-9223372036854775808;1.5;\"a;b\"\n;x\n", sb.toString());
+
+        sb.setLength(0);
+        Csv.instance().quote('\'').forceQuotes(true).appender(sb).field("it's").field(7).recordEnd();
+        Assert.assertEquals("'it''s','7'\n", sb.toString());
+    }
+
+    /**
+     * Writer which is not in memory one.
+     */
+    private static class BufferedWriterProbe extends FilterWriter {
+        BufferedWriterProbe(Writer writer) { super(writer); }
+    }
+
+    @Test
+	public void appenderWriteThrough() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(out, false, "utf-8");
+        Csv.instance().appender((Appendable)ps).field("a").field(1).recordEnd();
+        Assert.assertEquals("without flush", "a,1\n", out.toString("utf-8"));
+
+        StringWriter writer = new StringWriter();
+        Csv.Appender appender = Csv.instance().appender(new BufferedWriterProbe(writer)).field("b");
+        Assert.assertEquals("b", writer.toString());
+        appender.recordEnd();
+        Assert.assertEquals("b\n", writer.toString());
+
+        out.reset();
+        appender = Csv.instance().appender((OutputStream)out).field("c").recordEnd();
+        Assert.assertEquals("owned writer is buffered", 0, out.size());
+        appender.flush();
+        Assert.assertEquals("c\n", out.toString("utf-8"));
+    }
+
+    @Test
+    @Category(Benchmark.class)
+	public void appenderThroughput() throws Exception {
+        int rows = 200000;
+        for(int round = 0; round < 3; round++) {
+            ByteArrayOutputStream legacyOut = new ByteArrayOutputStream(16 * 1024 * 1024);
+            long start = System.nanoTime();
+            LegacyAppender legacy = LegacyAppender.instance(new OutputStreamWriter(legacyOut, "utf-8"), ',', '"', false, " ");
+            for(int i = 0; i < rows; i++) {
+                legacy.field(String.valueOf(i));
+                legacy.field("name" + (i % 1000));
+                legacy.field("street 12, city");
+                legacy.field(String.valueOf(i / 100.0));
+                legacy.field("said \"hello\"");
+                legacy.field(String.valueOf(i * 31L));
+                legacy.recordEnd();
+            }
+            legacy.flush();
+            long legacyTime = System.nanoTime() - start;
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024 * 1024);
+            start = System.nanoTime();
+            Csv.Appender appender = Csv.instance().nlreplacer(" ").appender(out);
+            for(int i = 0; i < rows; i++) {
+                appender.field(i);
+                appender.field("name" + (i % 1000));
+                appender.field("street 12, city");
+                appender.field(i / 100.0);
+                appender.field("said \"hello\"");
+                appender.field(i * 31L);
+                appender.recordEnd();
+            }
+            appender.flush();
+            long currentTime = System.nanoTime() - start;
+            Assert.assertArrayEquals(legacyOut.toByteArray(), out.toByteArray());
+            System.out.println(" -- csv export " + (out.size() / 1024 / 1024) + "MB legacy: " + (legacyTime / 1000000) + "ms"
+                + " buffered: " + (currentTime / 1000000) + "ms");
+        }
+    }
+
+    private static String sample(int rows) {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < rows; i++) {
+            sb.append(i).append(',');
+            sb.append("name").append(random.nextInt(100000)).append(',');
+            sb.append("\"street ").append(random.nextInt(1000)).append(", city\"").append(',');
+            sb.append(random.nextInt(1000000) / 100.0).append(',');
+            sb.append("\"said \"\"hello\"\"\"").append(',');
+            sb.append("2024-01-").append(10 + random.nextInt(20)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static long count(Reader reader) {
+        Csv.Scanner scanner = Csv.Scanner.instance(reader, ',', '"');
+        long rv = 0;
+        Csv.Scanner.Token token = scanner.next();
+        while(token != null) {
+            if(token == Csv.Scanner.Token.FIELD) rv += scanner.current().length();
+            token = scanner.next();
+        }
+        return rv;
+    }
+
+    private static long countLegacy(Reader reader) {
+        LegacyScanner scanner = LegacyScanner.instance(reader, ',', '"');
+        long rv = 0;
+        Csv.Scanner.Token token = scanner.next();
+        while(token != null) {
+            if(token == Csv.Scanner.Token.FIELD) rv += scanner.current().length();
+            token = scanner.next();
+        }
+        return rv;
+    }
+
+    private static String tokens(String text, int bufferSize) {
+        return tokens(Csv.Scanner.instance(new StringReader(text), ',', '"', bufferSize));
+    }
+
+    private static String tokens(Csv.Scanner scanner) {
+        List<String> list = new ArrayList<String>();
+        Csv.Scanner.Token token = scanner.next();
+        while(token != null) {
+            list.add(token == Csv.Scanner.Token.FIELD ? scanner.current() : "|");
+            token = scanner.next();
+        }
+        return list.toString();
+    }
+
+    private static String legacyTokens(String text) {
+        LegacyScanner scanner = LegacyScanner.instance(new StringReader(text), ',', '"');
+        List<String> list = new ArrayList<String>();
+        Csv.Scanner.Token token = scanner.next();
+        while(token != null) {
+            list.add(token == Csv.Scanner.Token.FIELD ? scanner.current() : "|");
+            token = scanner.next();
+        }
+        return list.toString();
+    }
+
+    /**
+     * Original String based implementation of Csv.Appender used as reference.
+     */
+    private static class LegacyAppender {
+        int delimiter = ',';
+        int quote = '"';
+        boolean forceQuotes = false;
+        String nlreplacer = null;
+        Appendable appendable;
+        private boolean firstInRow = true;
+        public static LegacyAppender instance(Appendable appendable, int delimiter, int quote, boolean forceQuotes, String nlreplacer) {
+            LegacyAppender rv = new LegacyAppender();
+            rv.appendable = appendable;
+            rv.delimiter = delimiter;
+            rv.quote = quote;
+            rv.forceQuotes = forceQuotes;
+            rv.nlreplacer = nlreplacer;
+            return rv;
+        }
+
+        private static String escape(String value) {
+            value = value.replace("\"", "\"\"");
+            return value;
+        }
+
+        private boolean shouldBeQuoted(String value) {
+            int len = value.length();
+            for(int i = 0; i < len; i++) {
+                char c = value.charAt(i);
+                if(c == delimiter) return true;
+                if(c == quote) return true;
+                if(c == '\n') return true;
+            }
+            return false;
+        }
+
+        public LegacyAppender field(String value) throws Exception {
+            if(value == null) value = "";
+            if(firstInRow) firstInRow = false;
+            else appendable.append((char)delimiter);
+            if(nlreplacer != null) {
+                value = value.replace("\r\n", nlreplacer);
+                value = value.replace("\r", nlreplacer);
+                value = value.replace("\n", nlreplacer);
+            }
+            if(forceQuotes || shouldBeQuoted(value)) {
+                appendable.append((char)quote);
+                appendable.append(escape(value));
+                appendable.append((char)quote);
+            } else {
+                appendable.append(value);
+            }
+            return this;
+        }
+
+        public LegacyAppender recordEnd() throws Exception {
+            appendable.append('\n');
+            firstInRow = true;
+            return this;
+        }
+
+        public LegacyAppender flush() throws Exception {
+            if(appendable instanceof Flushable) ((Flushable)appendable).flush();
+            return this;
+        }
+    }
+
+    /**
+     * Original per char implementation of Csv.Scanner used as reference.
+     */
+    private static class LegacyScanner {
+        int delimiter = ',';
+        int quote = '"';
+        int first = 0;
+        int second = 0;
+        Reader reader;
+        StringBuilder buff = new StringBuilder(300);
+        boolean nextWillBeRecordEnd = false;
+        Csv.Scanner.Token lastToken = Csv.Scanner.Token.RECORD_END;
+
+        static LegacyScanner instance(Reader reader, int delimiter, int quote) {
+            LegacyScanner rv = new LegacyScanner();
+            rv.reader = reader;
+            rv.delimiter = delimiter;
+            rv.quote = quote;
+            rv.read();
+            rv.read();
+            return rv;
+        }
+
+        int read() {
+            try {
+                int rv = first;
+                first = second;
+                second = reader.read();
+                return rv;
+            } catch(Exception e) {
+                throw AsRuntimeEx.state(e);
+            }
+        }
+
+        String current() { return buff.toString(); }
+
+        Csv.Scanner.Token next() {
+            buff.setLength(0);
+            if(nextWillBeRecordEnd) {
+                nextWillBeRecordEnd = false;
+                lastToken = Csv.Scanner.Token.RECORD_END;
+                return Csv.Scanner.Token.RECORD_END;
+            } else {
+                lastToken = Csv.Scanner.Token.FIELD;
+            }
+            int c = read();
+            if(c < 0) return null;
+            if(c == delimiter) {
+                return Csv.Scanner.Token.FIELD;
+            } else if(c == quote) {
+                consumeQuoted();
+                return Csv.Scanner.Token.FIELD;
+            } else if(c == '\n') {
+                if(lastToken == Csv.Scanner.Token.RECORD_END) {
+                    if(first == -1) {
+                        return null;
+                    } else {
+                        nextWillBeRecordEnd = true;
+                        return Csv.Scanner.Token.FIELD;
+                    }
+                } else {
+                    nextWillBeRecordEnd = true;
+                    return Csv.Scanner.Token.FIELD;
+                }
+            } else if(c == '\r') {
+                if(lastToken == Csv.Scanner.Token.RECORD_END) {
+                    if((first == '\n') && (first == -1)) {
+                        return null;
+                    } else {
+                        read();
+                        nextWillBeRecordEnd = true;
+                        return Csv.Scanner.Token.FIELD;
+                    }
+                } else {
+                    read();
+                    nextWillBeRecordEnd = true;
+                    return Csv.Scanner.Token.FIELD;
+                }
+            } else {
+                buff.append((char)c);
+                skipToFieldEnd(true);
+                return Csv.Scanner.Token.FIELD;
+            }
+        }
+
+        private void consumeQuoted() {
+            int c = read();
+            while((c != -1)) {
+                if(c == quote) {
+                    if(first == quote) {
+                        read();
+                    } else {
+                        break;
+                    }
+                }
+                buff.append((char)c);
+                c = read();
+            }
+            skipToFieldEnd(false);
+        }
+
+        private void skipToFieldEnd(boolean store) {
+            int c = read();
+            while((c != -1)) {
+                if(c == delimiter) {
+                    break;
+                } else if(c == '\n') {
+                    nextWillBeRecordEnd = true;
+                    if(first == -1) read();
+                    break;
+                } else if(c == '\r') {
+                    if(first == '\n') {
+                        nextWillBeRecordEnd = true;
+                        read();
+                        if(first == -1) read();
+                        break;
+                    }
+                }
+                if(store) buff.append((char)c);
+                c = read();
+            }
+            if(c == -1) nextWillBeRecordEnd = true;
+        }
+    }
+}
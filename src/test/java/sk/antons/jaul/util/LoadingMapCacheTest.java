@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sk.antons.jaul.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author antons
+ */
+public class LoadingMapCacheTest {
+
+    @Test
+	public void singleFlight() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final LoadingMapCache<Integer, String> cache = MapCache.instance(Integer.class, String.class)
+            .limit(100)
+            .loader(new Function<Integer, String>() {
+                public String apply(Integer key) {
+                    loads.incrementAndGet();
+                    try { Thread.sleep(200); } catch(InterruptedException e) { }
+                    return "value" + key;
+                }
+            });
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<String> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < 50; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try { start.await(); } catch(InterruptedException e) { }
+                    String value = cache.get(1);
+                    synchronized(results) { results.add(value); }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for(Thread thread : threads) thread.join();
+        Assert.assertEquals("one load", 1, loads.get());
+        Assert.assertEquals(50, results.size());
+        for(String result : results) Assert.assertEquals("value1", result);
+        Assert.assertEquals("value1", cache.get(1));
+        Assert.assertEquals("still one load", 1, loads.get());
+    }
+
+    @Test
+	public void stats() throws Exception {
+        MapCache<Integer, String> mc = MapCache.instance(Integer.class, String.class)
+            .recordStats(true);
+        LoadingMapCache<Integer, String> cache = mc.loader(new Function<Integer, String>() {
+                public String apply(Integer key) {
+                    if(key < 0) throw new IllegalArgumentException("negative");
+                    return "value" + key;
+                }
+            });
+        cache.get(1);
+        cache.get(1);
+        try { cache.get(-1); } catch(IllegalArgumentException e) { }
+        CacheStats stats = mc.stats();
+        Assert.assertEquals(1, stats.hitCount());
+        Assert.assertEquals(2, stats.missCount());
+        Assert.assertEquals(1, stats.loadSuccessCount());
+        Assert.assertEquals(1, stats.loadFailureCount());
+        Assert.assertTrue(stats.totalLoadTime() > 0);
+    }
+
+    @Test
+	public void failure() throws Exception {
+        LoadingMapCache<Integer, String> cache = MapCache.instance(Integer.class, String.class)
+            .loader(new Function<Integer, String>() {
+                public String apply(Integer key) {
+                    if(key < 0) throw new IllegalArgumentException("negative");
+                    return key < 10 ? "value" + key : null;
+                }
+            });
+        try {
+            cache.get(-1);
+            Assert.fail("exception expected");
+        } catch(IllegalArgumentException e) {
+            Assert.assertEquals("negative", e.getMessage());
+        }
+        Assert.assertNull("null is not cached", cache.get(10));
+        Assert.assertFalse(cache.containsKey(10));
+        Assert.assertEquals("value1", cache.get(1));
+    }
+
+    @Test
+	public void refreshRace() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Thread> refreshes = new ArrayList<>();
+        LoadingMapCache<Integer, String> cache = MapCache.instance(Integer.class, String.class)
+            .expiration(1000)
+            .loader(new Function<Integer, String>() {
+                private final AtomicInteger loads = new AtomicInteger();
+                public String apply(Integer key) {
+                    if(loads.incrementAndGet() <= 2) return "loaded" + key;
+                    try { release.await(); } catch(InterruptedException e) { }
+                    return "refreshed" + key;
+                }
+            })
+            .refreshAhead(900)
+            .executor(new Executor() {
+                public void execute(Runnable command) {
+                    Thread thread = new Thread(command);
+                    refreshes.add(thread);
+                    thread.start();
+                }
+            });
+        Assert.assertEquals("loaded1", cache.get(1));
+        Assert.assertEquals("loaded2", cache.get(2));
+        Thread.sleep(200);
+        Assert.assertEquals("loaded1", cache.get(1));
+        Assert.assertEquals("loaded2", cache.get(2));
+        Assert.assertEquals("refreshes", 2, refreshes.size());
+        cache.remove(1);
+        cache.put(2, "explicit2");
+        release.countDown();
+        for(Thread thread : refreshes) thread.join();
+        Assert.assertFalse("removed key is not restored", cache.containsKey(1));
+        Assert.assertEquals("explicit value is kept", "explicit2", cache.get(2));
+    }
+
+    @Test
+	public void refreshAhead() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        LoadingMapCache<Integer, Integer> cache = MapCache.instance(Integer.class, Integer.class)
+            .expiration(1000)
+            .loader(new Function<Integer, Integer>() {
+                public Integer apply(Integer key) {
+                    return loads.incrementAndGet();
+                }
+            })
+            .refreshAhead(500);
+        Assert.assertEquals((Integer)1, cache.get(1));
+        Thread.sleep(600);
+        Assert.assertEquals("old value returned", (Integer)1, cache.get(1));
+        Thread.sleep(200);
+        Assert.assertEquals("refreshed", 2, loads.get());
+        Thread.sleep(500);
+        Assert.assertEquals("not expired", (Integer)2, cache.get(1));
+    }
+
+}
@@ -15,9 +15,21 @@
  */
 package sk.antons.jaul.util;
 
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import sk.antons.jaul.xml.Elem;
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import sk.antons.jaul.Benchmark;
 
 /**
  *
@@ -105,5 +117,469 @@ public class MapCacheTest {
         Assert.assertEquals("size 0", 0, cache.size());
     }
 
+    @Test
+	public void views() throws Exception {
+        MapCache<Integer, Integer> cache = MapCache.instance(Integer.class, Integer.class);
+        for(int i = 0; i < 100; i++) {
+            cache.put(i, i * 10);
+        }
+        cache.put(1000, 1000, 100);
+        Assert.assertEquals(101, cache.keySet().size());
+        Assert.assertTrue(cache.keySet().contains(1000));
+        Thread.sleep(200);
+        // expired entry is skipped
+        Assert.assertEquals(100, cache.entrySet().size());
+        Assert.assertFalse(cache.keySet().contains(1000));
+        long sum = 0;
+        for(Integer value : cache.values()) sum += value;
+        Assert.assertEquals(49500, sum);
+        for(Map.Entry<Integer, Integer> entry : cache.entrySet()) {
+            Assert.assertEquals(entry.getKey() * 10, (int)entry.getValue());
+        }
+        Assert.assertTrue(cache.containsValue(990));
+        Assert.assertFalse(cache.containsValue(991));
+        Iterator<Integer> it = cache.keySet().iterator();
+        while(it.hasNext()) {
+            if(it.next() % 2 == 0) it.remove();
+        }
+        Assert.assertEquals(50, cache.size());
+        Assert.assertNull(cache.get(2));
+        Assert.assertEquals((Integer)30, cache.get(3));
+        cache.values().clear();
+        Assert.assertTrue(cache.isEmpty());
+    }
+
+    @Test
+	public void footprint() throws Exception {
+        // jol like estimation of entry layout for 64bit jvm with compressed oops
+        Class<?> entryClass = Class.forName(MapCache.class.getName() + "$Entry");
+        Assert.assertTrue("static entry", Modifier.isStatic(entryClass.getModifiers()));
+        long size = 12;
+        for(Class<?> c = entryClass; c != Object.class; c = c.getSuperclass()) {
+            for(Field field : c.getDeclaredFields()) {
+                if(Modifier.isStatic(field.getModifiers())) continue;
+                Assert.assertFalse("outer reference " + field, field.isSynthetic());
+                Assert.assertFalse("boxed field " + field, Number.class.isAssignableFrom(field.getType()));
+                Class<?> type = field.getType();
+                if((type == long.class) || (type == double.class)) size += 8;
+                else if((type == int.class) || (type == float.class)) size += 4;
+                else if((type == short.class) || (type == char.class)) size += 2;
+                else if((type == byte.class) || (type == boolean.class)) size += 1;
+                else size += 4;
+            }
+        }
+        size = (size + 7) & ~7L;
+        // table slot with load factor 0.75
+        double perEntry = size + 4 / 0.75;
+        System.out.println(" -- entry " + size + "B, per entry " + perEntry + "B (was 88B + table slot)");
+        Assert.assertTrue("entry size " + size, size <= 56);
+        Assert.assertTrue("per entry " + perEntry, perEntry < 64);
+    }
+
+    @Test
+	public void accessOrder() throws Exception {
+        MapCache<Integer, Integer> cache = MapCache.instance(Integer.class, Integer.class)
+            .limit(3)
+            .accessOrder(true);
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.put(3, 3);
+        cache.get(1);
+        cache.put(4, 4);
+        System.out.println(" -- " + cache.dunp());
+        Assert.assertEquals("hot entry kept", (Integer)1, cache.get(1));
+        Assert.assertNull("lru entry evicted", cache.get(2));
+        Assert.assertEquals((Integer)3, cache.get(3));
+        Assert.assertEquals((Integer)4, cache.get(4));
+
+        cache = MapCache.instance(Integer.class, Integer.class)
+            .limit(3);
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.put(3, 3);
+        cache.get(1);
+        cache.put(4, 4);
+        Assert.assertNull("fifo evicts oldest", cache.get(1));
+        Assert.assertEquals((Integer)2, cache.get(2));
+    }
+
+    @Test
+	public void accessOrderExpiration() throws Exception {
+        MapCache<Integer, Integer> cache = MapCache.instance(Integer.class, Integer.class)
+            .expiration(500)
+            .accessOrder(true);
+        cache.put(1, 1);
+        Thread.sleep(300);
+        cache.put(2, 2);
+        cache.get(1);
+        Thread.sleep(300);
+        Assert.assertNull("expired", cache.get(1));
+        Assert.assertEquals("not expired", (Integer)2, cache.get(2));
+    }
+
+    @Test
+	public void ttl() throws Exception {
+        MapCache<Integer, Integer> cache = MapCache.instance(Integer.class, Integer.class)
+            .expiration(400);
+        cache.put(1, 1, 100);
+        cache.put(2, 2);
+        cache.put(3, 3, Long.MAX_VALUE);
+        cache.put(4, 4, 0);
+        Assert.assertNull("not stored", cache.get(4));
+        Assert.assertEquals(Long.MAX_VALUE, cache.expiresAt(3));
+        Thread.sleep(200);
+        Assert.assertNull("own ttl", cache.get(1));
+        Assert.assertEquals("global ttl", (Integer)2, cache.get(2));
+        Thread.sleep(300);
+        Assert.assertNull("global ttl", cache.get(2));
+        Assert.assertEquals("no ttl", (Integer)3, cache.get(3));
+    }
+
+    @Test
+	public void expiry() throws Exception {
+        MapCache<Integer, Long> cache = MapCache.instance(Integer.class, Long.class)
+            .expiry(new Expiry<Integer, Long>() {
+                public long expireAfterWrite(Integer key, Long value) { return value - System.currentTimeMillis(); }
+            });
+        long now = System.currentTimeMillis();
+        // variable deadlines in reversed order
+        for(int i = 0; i < 10; i++) {
+            cache.put(i, now + 1000 - i * 100);
+        }
+        cache.put(100, now - 1);
+        Assert.assertFalse("already expired", cache.containsKey(100));
+        Thread.sleep(550);
+        for(int i = 0; i < 10; i++) {
+            if(i < 5) Assert.assertEquals("check " + i, (Long)(now + 1000 - i * 100), cache.get(i));
+            else Assert.assertNull("check " + i, cache.get(i));
+        }
+        Assert.assertEquals(5, cache.size());
+    }
+
+    /**
+     * Cache with clock moved by test, so entries expire without waiting 
+     * for ticks of timer wheel.
+     */
+    private static MapCache<Integer, Integer> clocked(final AtomicLong clock) {
+        return new MapCache<Integer, Integer>() {
+            @Override
+            long now() { return clock.get(); }
+        };
+    }
+
+    @Test
+	public void sweep() throws Exception {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        MapCache<Integer, Integer> cache = clocked(clock)
+            .expiration(100);
+        for(int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        Assert.assertEquals("size", 1000, cache.size());
+        clock.addAndGet(50);
+        cache.sweep();
+        Assert.assertEquals("not expired", 1000, cache.size());
+        clock.addAndGet(2200);
+        cache.sweep();
+        Assert.assertEquals("swept", 0, cache.size());
+    }
+
+    @Test
+	public void sweeper() throws Exception {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        MapCache<Integer, Integer> mc = clocked(clock)
+            .expiration(100);
+        Map<Integer, Integer> cache = mc.sweeper(20);
+        Assert.assertSame("view", mc.synchronize(), cache);
+        for(int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        Assert.assertEquals("size", 1000, cache.size());
+        clock.addAndGet(2200);
+        for(int i = 0; (i < 250) && (cache.size() > 0); i++) Thread.sleep(20);
+        Assert.assertEquals("swept", 0, cache.size());
+    }
+
+    @Test
+	public void putSweeps() throws Exception {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        MapCache<Integer, Integer> cache = clocked(clock)
+            .expiration(100);
+        for(int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        clock.addAndGet(2200);
+        cache.put(-1, -1);
+        Assert.assertEquals("swept by put", 1, cache.size());
+        Assert.assertEquals((Integer)(-1), cache.get(-1));
+    }
+
+    @Test
+	public void weight() throws Exception {
+        MapCache<Integer, byte[]> cache = MapCache.instance(Integer.class, byte[].class)
+            .maximumWeight(10000)
+            .weigher(new Weigher<Integer, byte[]>() {
+                public int weigh(Integer key, byte[] value) { return value.length; }
+            });
+        for(int i = 0; i < 100; i++) {
+            cache.put(i, new byte[i % 2 == 0 ? 200 : 1000]);
+        }
+        Assert.assertTrue("weight " + cache.weight(), cache.weight() <= 10000);
+        Assert.assertTrue("weight " + cache.weight(), cache.weight() > 9000);
+        Assert.assertNotNull("last kept", cache.get(99));
+        Assert.assertNull("first evicted", cache.get(0));
+        cache.put(1000, new byte[20000]);
+        Assert.assertNull("too big", cache.get(1000));
+        Assert.assertNotNull("nothing evicted", cache.get(99));
+        long weight = cache.weight();
+        cache.remove(99);
+        Assert.assertEquals(weight - 1000, cache.weight());
+        cache.put(98, new byte[20000]);
+        Assert.assertNull("too big value drops key", cache.get(98));
+        Assert.assertEquals(weight - 1200, cache.weight());
+        cache.clear();
+        Assert.assertEquals(0, cache.weight());
+    }
+
+    @Test
+	public void weightLimit() throws Exception {
+        MapCache<Integer, byte[]> cache = MapCache.instance(Integer.class, byte[].class)
+            .limit(3)
+            .maximumWeight(100)
+            .weigher(new Weigher<Integer, byte[]>() {
+                public int weigh(Integer key, byte[] value) { return value.length; }
+            });
+        cache.put(1, new byte[10]);
+        cache.put(2, new byte[10]);
+        cache.put(3, new byte[10]);
+        cache.put(4, new byte[200]);
+        Assert.assertNull("too big", cache.get(4));
+        Assert.assertEquals("nothing evicted", 3, cache.size());
+        Assert.assertNotNull(cache.get(1));
+        Assert.assertEquals(30, cache.weight());
+        cache.put(5, new byte[80]);
+        Assert.assertEquals(3, cache.size());
+        Assert.assertNotNull(cache.get(5));
+        Assert.assertTrue("weight " + cache.weight(), cache.weight() <= 100);
+    }
+
+    @Test
+	public void weightPromote() throws Exception {
+        MapCache<Integer, byte[]> cache = MapCache.instance(Integer.class, byte[].class)
+            .maximumWeight(100)
+            .weigher(new Weigher<Integer, byte[]>() {
+                public int weigh(Integer key, byte[] value) { return value.length; }
+            })
+            .secondTier(OffHeapTier.<Integer, byte[]>direct(Serializer.bytes(), 1000));
+        cache.put(1, new byte[80]);
+        cache.put(2, new byte[80]);
+        Assert.assertTrue("evicted to tier", cache.secondTier().containsKey(1));
+        cache.maximumWeight(50);
+        Assert.assertEquals("heavy value is returned", 80, cache.get(1).length);
+        Assert.assertTrue("heavy value stays in tier", cache.secondTier().containsKey(1));
+        Assert.assertEquals(80, cache.get(1).length);
+        cache.maximumWeight(100);
+        Assert.assertEquals(80, cache.get(1).length);
+        Assert.assertFalse("promoted", cache.secondTier().containsKey(1));
+        Assert.assertTrue("tail moved to tier", cache.secondTier().containsKey(2));
+    }
+
+    @Test
+	public void secondTier() throws Exception {
+        MapCache<Integer, String> cache = MapCache.instance(Integer.class, String.class)
+            .limit(10)
+            .recordStats(true)
+            .secondTier(OffHeapTier.<Integer, String>direct(Serializer.string(), 1000));
+        for(int i = 0; i < 100; i++) {
+            cache.put(i, "value-" + i);
+        }
+        // 10 on heap and 90 * 8 bytes off heap
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(90, cache.secondTier().size());
+        Assert.assertEquals("value-0", cache.get(0));
+        // promoted entry replaced tail on heap
+        Assert.assertFalse(cache.secondTier().containsKey(0));
+        Assert.assertTrue(cache.secondTier().containsKey(90));
+        Assert.assertEquals(90, cache.secondTier().size());
+        Assert.assertEquals(91, cache.stats().evictionCount());
+        Assert.assertEquals(1, cache.stats().hitCount());
+        Assert.assertEquals("value-0", cache.remove(0));
+        Assert.assertEquals("value-1", cache.remove(1));
+        Assert.assertNull(cache.get(1));
+        for(int i = 100; i < 300; i++) {
+            cache.put(i, "value-" + i);
+        }
+        Assert.assertNull("dropped from second tier", cache.get(2));
+        Assert.assertEquals("value-250", cache.get(250));
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertTrue(cache.isEmpty());
+    }
+
+    @Test
+	public void approximateWeight() throws Exception {
+        Weigher<Object, Object> weigher = Weigher.approximate();
+        Assert.assertEquals(16 + 1000, weigher.weigh(null, new byte[1000]));
+        Assert.assertEquals(40 + 20, weigher.weigh(null, "0123456789"));
+        Elem small = Elem.parse("<a><b>text</b></a>");
+        Elem big = Elem.parse("<a><b x=\"1\">text</b><b>text</b><b>" + new String(new char[1000]) .replace('\0', 'x') + "</b></a>");
+        Assert.assertTrue(weigher.weigh(null, small) > 100);
+        Assert.assertTrue(weigher.weigh(null, big) > weigher.weigh(null, small) + 2000);
+    }
+
+    @Test
+	public void stats() throws Exception {
+        MapCache<Integer, Integer> cache = MapCache.instance(Integer.class, Integer.class)
+            .limit(10)
+            .recordStats(true);
+        for(int i = 0; i < 20; i++) {
+            cache.put(i, i);
+        }
+        for(int i = 0; i < 20; i++) {
+            cache.get(i);
+        }
+        CacheStats stats = cache.stats();
+        System.out.println(" -- " + stats);
+        Assert.assertEquals(10, stats.hitCount());
+        Assert.assertEquals(10, stats.missCount());
+        Assert.assertEquals(10, stats.evictionCount());
+        Assert.assertEquals(0.5, stats.hitRate(), 0.0001);
+        cache.get(19);
+        Assert.assertEquals(1, cache.stats().minus(stats).hitCount());
+    }
+
+    @Test
+	public void mbean() throws Exception {
+        String name = "sk.antons.jaul:type=MapCache,name=test";
+        MapCache<Integer, Integer> cache = MapCache.instance(Integer.class, Integer.class)
+            .registerMBean(name);
+        try {
+            cache.put(1, 1);
+            cache.get(1);
+            cache.get(2);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName oname = new ObjectName(name);
+            Assert.assertEquals(1L, server.getAttribute(oname, "HitCount"));
+            Assert.assertEquals(1L, server.getAttribute(oname, "MissCount"));
+            Assert.assertEquals(1, server.getAttribute(oname, "Size"));
+        } finally {
+            cache.unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Compares hit rate of FIFO and LRU eviction on zipfian workload.
+     */
+    @Test
+    @Category(Benchmark.class)
+	public void zipfHitRate() throws Exception {
+        int keys = 10000;
+        int requests = 300000;
+        int[] workload = zipf(keys, 0.9, requests, 42);
+        double fifo = hitRate(MapCache.instance(Integer.class, Integer.class).limit(500), workload);
+        double lru = hitRate(MapCache.instance(Integer.class, Integer.class).limit(500).accessOrder(true), workload);
+        System.out.println(" -- zipf hit rate fifo: " + fifo + " lru: " + lru);
+        Assert.assertTrue("lru " + lru + " fifo " + fifo, lru > fifo);
+    }
+
+    @Test
+	public void admission() throws Exception {
+        MapCache<Integer, Integer> lru = MapCache.instance(Integer.class, Integer.class)
+            .limit(100).accessOrder(true);
+        MapCache<Integer, Integer> tiny = MapCache.instance(Integer.class, Integer.class)
+            .limit(100).accessOrder(true).admission(true);
+        for(int round = 0; round < 5; round++) {
+            for(int i = 0; i < 100; i++) {
+                if(lru.get(i) == null) lru.put(i, i);
+                if(tiny.get(i) == null) tiny.put(i, i);
+            }
+        }
+        // one time scan mixed with regular traffic of hot entries
+        int lruhits = 0;
+        int tinyhits = 0;
+        for(int i = 0; i < 10000; i++) {
+            int scan = 1000 + i;
+            if(lru.get(scan) == null) lru.put(scan, scan);
+            if(tiny.get(scan) == null) tiny.put(scan, scan);
+            int hot = i % 100;
+            if(lru.get(hot) == null) lru.put(hot, hot);
+            else lruhits++;
+            if(tiny.get(hot) == null) tiny.put(hot, hot);
+            else tinyhits++;
+        }
+        System.out.println(" -- hot hits during scan lru: " + lruhits + " admission: " + tinyhits);
+        Assert.assertEquals("lru flushed by scan", 0, lruhits);
+        Assert.assertTrue("admission keeps hot entries " + tinyhits, tinyhits > 9000);
+        Assert.assertEquals("size", 100, tiny.size());
+    }
+
+    @Test
+	public void admissionUpdate() throws Exception {
+        MapCache<Integer, String> cache = MapCache.instance(Integer.class, String.class)
+            .limit(3).accessOrder(true).admission(true);
+        for(int i = 0; i < 3; i++) cache.put(i, "v" + i);
+        // key 0 is at the tail and it is less popular than others
+        for(int round = 0; round < 10; round++) {
+            cache.get(1);
+            cache.get(2);
+        }
+        cache.put(0, "updated");
+        Assert.assertEquals("updated", cache.get(0));
+        Assert.assertEquals("v1", cache.get(1));
+        Assert.assertEquals("v2", cache.get(2));
+        Assert.assertEquals(3, cache.size());
+
+        MapCache<Integer, String> weighted = MapCache.instance(Integer.class, String.class)
+            .maximumWeight(30).accessOrder(true).admission(true)
+            .weigher(new Weigher<Integer, String>() {
+                public int weigh(Integer key, String value) { return value.length(); }
+            });
+        for(int i = 0; i < 3; i++) weighted.put(i, "0123456789");
+        for(int round = 0; round < 10; round++) {
+            weighted.get(1);
+            weighted.get(2);
+        }
+        weighted.put(0, "012345678");
+        Assert.assertEquals("012345678", weighted.get(0));
+        Assert.assertEquals(29, weighted.weight());
+        Assert.assertEquals(3, weighted.size());
+    }
+
+    @Test
+    @Category(Benchmark.class)
+	public void zipfAdmissionHitRate() throws Exception {
+        int[] workload = zipf(10000, 0.9, 300000, 42);
+        double lru = hitRate(MapCache.instance(Integer.class, Integer.class).limit(500).accessOrder(true), workload);
+        double tiny = hitRate(MapCache.instance(Integer.class, Integer.class).limit(500).accessOrder(true).admission(true), workload);
+        System.out.println(" -- zipf hit rate lru: " + lru + " admission: " + tiny);
+        Assert.assertTrue("admission " + tiny + " lru " + lru, tiny > lru);
+    }
+
+    static double hitRate(Map<Integer, Integer> cache, int[] workload) {
+        int hits = 0;
+        for(int key : workload) {
+            if(cache.get(key) != null) hits++;
+            else cache.put(key, key);
+        }
+        return ((double)hits) / workload.length;
+    }
+
+    static int[] zipf(int keys, double skew, int size, long seed) {
+        double[] cdf = new double[keys];
+        double sum = 0;
+        for(int i = 0; i < keys; i++) {
+            sum = sum + 1 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        Random random = new Random(seed);
+        int[] rv = new int[size];
+        for(int i = 0; i < size; i++) {
+            double value = random.nextDouble() * sum;
+            int index = Arrays.binarySearch(cdf, value);
+            if(index < 0) index = -index - 1;
+            rv[i] = index;
+        }
+        return rv;
+    }
 
 }
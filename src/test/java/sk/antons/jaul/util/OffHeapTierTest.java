@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sk.antons.jaul.util;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author antons
+ */
+public class OffHeapTierTest {
+
+    @Test
+	public void circular() throws Exception {
+        OffHeapTier<Integer, byte[]> tier = OffHeapTier.direct(Serializer.bytes(), 1000);
+        for(int i = 0; i < 9; i++) {
+            Assert.assertTrue(tier.put(i, new byte[100], Long.MAX_VALUE));
+        }
+        Assert.assertEquals(900, tier.bytes());
+        tier.remove(8);
+        // end of buffer is too short, oldest are overwritten
+        tier.put(9, new byte[250], Long.MAX_VALUE);
+        Assert.assertNull(tier.get(0));
+        Assert.assertNull(tier.get(1));
+        Assert.assertNull(tier.get(2));
+        Assert.assertNotNull(tier.get(3));
+        Assert.assertEquals(250, tier.get(9).length);
+        Assert.assertEquals(5 * 100 + 250, tier.bytes());
+        Assert.assertFalse("too big", tier.put(10, new byte[1001], Long.MAX_VALUE));
+        Assert.assertTrue(tier.put(11, new byte[1000], Long.MAX_VALUE));
+        Assert.assertEquals(1, tier.size());
+        Assert.assertEquals(1000, tier.bytes());
+    }
+
+    @Test
+	public void values() throws Exception {
+        OffHeapTier<Integer, String> tier = OffHeapTier.direct(Serializer.string(), 100000);
+        for(int i = 0; i < 1000; i++) {
+            tier.put(i, "value " + i, Long.MAX_VALUE);
+        }
+        for(int i = 0; i < 1000; i++) {
+            Assert.assertEquals("value " + i, tier.get(i));
+        }
+        tier.put(1, "expired", System.currentTimeMillis() - 1);
+        Assert.assertNull(tier.get(1));
+        Assert.assertEquals(999, tier.size());
+    }
+
+    @Test
+	public void discard() throws Exception {
+        final AtomicInteger reads = new AtomicInteger();
+        Serializer<String> serializer = new Serializer<String>() {
+            public byte[] serialize(String value) { return Serializer.string().serialize(value); }
+            public String deserialize(byte[] data) {
+                reads.incrementAndGet();
+                return Serializer.string().deserialize(data);
+            }
+        };
+        OffHeapTier<Integer, String> tier = OffHeapTier.direct(serializer, 1000);
+        tier.put(1, "one", Long.MAX_VALUE);
+        tier.put(1, "uno", Long.MAX_VALUE);
+        Assert.assertTrue(tier.discard(1));
+        Assert.assertFalse(tier.discard(1));
+        Assert.assertEquals("nothing read", 0, reads.get());
+        Assert.assertEquals(0, tier.size());
+        Assert.assertEquals(0, tier.bytes());
+
+        MapCache<Integer, String> cache = MapCache.instance(Integer.class, String.class)
+            .limit(1)
+            .secondTier(OffHeapTier.<Integer, String>direct(serializer, 1000));
+        cache.put(1, "one");
+        cache.put(2, "two");
+        Assert.assertEquals(1, cache.secondTier().size());
+        cache.put(1, "uno");
+        Assert.assertEquals("put does not read old value", 0, reads.get());
+        Assert.assertEquals("uno", cache.get(1));
+        Assert.assertEquals("two", cache.get(2));
+        Assert.assertEquals(1, reads.get());
+    }
+
+    @Test
+	public void mapped() throws Exception {
+        File file = File.createTempFile("jaul-tier", ".bin");
+        file.deleteOnExit();
+        OffHeapTier<String, java.util.Date> tier = OffHeapTier.mapped(Serializer.<java.util.Date>serializable(), file, 1024*1024);
+        java.util.Date date = new java.util.Date(1000);
+        tier.put("date", date, Long.MAX_VALUE);
+        Assert.assertEquals(date, tier.get("date"));
+        Assert.assertEquals(1024*1024, file.length());
+        Assert.assertEquals(1024*1024, tier.limit());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Anton Straka
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sk.antons.jaul.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author antons
+ */
+public class TimerWheelTest {
+
+    private static class Item extends TimerWheel.Node<Item> {
+        Item(long time) { this.time = time; }
+    }
+
+    @Test
+	public void advance() throws Exception {
+        long start = 1700000000000L;
+        TimerWheel<Item> wheel = new TimerWheel<Item>(start);
+        Random random = new Random(1);
+        List<Item> items = new ArrayList<>();
+        for(int i = 0; i < 10000; i++) {
+            long duration = (long)Math.pow(10, random.nextDouble() * 10); // 1ms - 115 days
+            Item item = new Item(start + duration);
+            items.add(item);
+            wheel.schedule(item);
+        }
+        final List<Item> expired = new ArrayList<>();
+        Consumer<Item> consumer = new Consumer<Item>() {
+            public void accept(Item t) { expired.add(t); }
+        };
+        long now = start;
+        long step = 1;
+        while(now < start + 200L * 24 * 3600 * 1000) {
+            now = now + step;
+            step = step * 3 / 2 + 1;
+            expired.clear();
+            wheel.advance(now, consumer);
+            for(Item item : expired) {
+                Assert.assertTrue("expired too early", item.time < now);
+            }
+            for(Item item : items) {
+                if(item.wnext != null) {
+                    Assert.assertTrue("not expired too late", item.time >= now - 1024);
+                }
+            }
+        }
+        for(Item item : items) {
+            Assert.assertNull("all expired", item.wnext);
+        }
+    }
+
+    @Test
+	public void deschedule() throws Exception {
+        TimerWheel<Item> wheel = new TimerWheel<Item>(0);
+        Item item = new Item(5000);
+        wheel.schedule(item);
+        wheel.deschedule(item);
+        final List<Item> expired = new ArrayList<>();
+        wheel.advance(100000, new Consumer<Item>() {
+            public void accept(Item t) { expired.add(t); }
+        });
+        Assert.assertTrue(expired.isEmpty());
+    }
+
+}